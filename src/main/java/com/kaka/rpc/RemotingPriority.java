@@ -0,0 +1,23 @@
+package com.kaka.rpc;
+
+import com.kaka.rpc.core.NettyServer;
+
+import java.lang.annotation.*;
+
+/**
+ * 标注于RPC接口或接口方法，指定服务端执行以方法ID发起的调用时的优先级，方法上的标注优先于接口上的标注 <br>
+ * 未标注时为 {@link NettyServer.Priority#NORMAL}；协议号及领域事件的优先级见 {@link NettyServer#setPriority(int, NettyServer.Priority)}
+ *
+ * @author zkpursuit
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface RemotingPriority {
+
+    /**
+     * @return 优先级
+     */
+    NettyServer.Priority value();
+
+}
@@ -6,6 +6,7 @@ import com.kaka.notice.Message;
 import com.kaka.notice.Proxy;
 import com.kaka.notice.detector.IDetector;
 import com.kaka.notice.detector.ProxyDetector;
+import com.kaka.rpc.core.RpcInvokeHandler;
 import com.kaka.util.StringUtils;
 
 /**
@@ -36,7 +37,8 @@ public class RemotingServiceDetector implements IDetector {
         Class<?> itfClass = anno.value();
         Facade facade = anno.context().isEmpty() ? FacadeFactory.getFacade() : FacadeFactory.getFacade(anno.context());
         Long itfId = StringUtils.toNumber(itfClass.getName());
-        Proxy proxy = facade.registerProxy((Class<? extends Proxy>) cls, itfClass.getName(), String.valueOf(itfId));
+        RpcInvokeHandler.registerInterface(itfClass); //登记接口方法并编译执行器
+        Proxy proxy = facade.registerProxy(cls.asSubclass(Proxy.class), itfClass.getName(), String.valueOf(itfId));
         if (facade.hasCommand("print_log")) {
             facade.sendMessage(new Message("print_log", new Object[]{ProxyDetector.class, new Object[]{proxy.getName(), cls}}));
         }
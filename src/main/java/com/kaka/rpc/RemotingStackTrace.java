@@ -0,0 +1,15 @@
+package com.kaka.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * 标注于RPC接口或接口方法，方法执行异常时将异常堆栈随结构化异常一同返回至调用方 <br>
+ * 未标注时仅返回异常类名、错误信息与错误码，亦可通过 {@link com.kaka.rpc.core.RpcInvokeHandler#sendStackTrace} 对全部方法开启
+ *
+ * @author zkpursuit
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface RemotingStackTrace {
+}
@@ -1,12 +1,15 @@
 package com.kaka.rpc;
 
+import com.kaka.rpc.codec.NativeTypeRegistry;
 import com.kaka.rpc.core.IClient;
+import com.kaka.rpc.core.RpcMethod;
 import com.kaka.util.StringUtils;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -18,6 +21,7 @@ import java.util.concurrent.ConcurrentHashMap;
  *        demoService.say("hello rpc world");
  *     }
  * </pre>
+ * 接口方法声明返回 {@link CompletableFuture} 或 {@link CompletionStage} 时不阻塞，直接返回远端结果的异步结果
  *
  * @author zkpursuit
  */
@@ -25,7 +29,7 @@ final public class RpcClient {
 
     private final static Map<Class<?>, Long> interfaceIdMap = new ConcurrentHashMap<>();
     private final static Map<Class<?>, Object> interfaceInstanceMap = new ConcurrentHashMap<>();
-    private final static Map<Class<?>, Map<Method, Long>> interfaceMethodMap = new ConcurrentHashMap<>();
+    private final static Map<Class<?>, Map<Method, RpcMethod>> interfaceMethodMap = new ConcurrentHashMap<>();
 
     /**
      * 获取远端接口代理
@@ -40,29 +44,43 @@ final public class RpcClient {
             throw new IllegalArgumentException("interfaceClass must be an interface");
         }
         final Long interfaceId = interfaceIdMap.computeIfAbsent(interfaceClass, k -> StringUtils.toNumber(interfaceClass.getName()));
-        final Map<Method, Long> map = interfaceMethodMap.computeIfAbsent(interfaceClass, k -> getAllMethods(interfaceClass));
-        Object instance = interfaceInstanceMap.computeIfAbsent(interfaceClass, k -> Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class[]{interfaceClass}, (proxy, method, args) -> {
-            String rpcCmd = "rpc:" + interfaceClass.getName() + ":" + method.getName() + ":" + map.get(method) + ":" + interfaceId;
-            return client.execRemotingLogic(rpcCmd, 3, args);
+        final Map<Method, RpcMethod> map = interfaceMethodMap.computeIfAbsent(interfaceClass, k -> {
+            NativeTypeRegistry.registerInterface(interfaceClass);
+            return getAllMethods(interfaceClass, interfaceClass.getName(), interfaceId);
+        });
+        Object instance = interfaceInstanceMap.computeIfAbsent(interfaceClass, k -> Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class<?>[]{interfaceClass}, (proxy, method, args) -> {
+            RpcMethod rpcMethod = map.get(method);
+            if (rpcMethod == null) {
+                //非接口声明的方法，如Object类中的方法，以方法名调用
+                rpcMethod = map.computeIfAbsent(method, m -> new RpcMethod(interfaceClass.getName(), m.getName(), interfaceId, null));
+            }
+            if (method.getReturnType().isAssignableFrom(CompletableFuture.class)
+                    && CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+                //声明返回异步结果的方法不阻塞等待
+                return client.execRemotingMethod0(rpcMethod, 3, args);
+            }
+            return client.execRemotingMethod(rpcMethod, 3, args);
         }));
-        return (T) instance;
+        return interfaceClass.cast(instance);
     }
 
     /**
      * 获取接口所有方法，并映射为唯一标识ID，此ID为方法完全限定名的MD5转换为Long，相对有限的接口方法，重复碰撞率可忽略
      *
      * @param interfaceClass 接口类
+     * @param interfaceName  代理接口完全限定名
+     * @param interfaceId    代理接口唯一标识
      */
-    private static Map<Method, Long> getAllMethods(Class<?> interfaceClass) {
-        Map<Method, Long> allMethods = new HashMap<>();
+    private static Map<Method, RpcMethod> getAllMethods(Class<?> interfaceClass, String interfaceName, Long interfaceId) {
+        Map<Method, RpcMethod> allMethods = new ConcurrentHashMap<>();
         Class<?>[] interfaces = interfaceClass.getInterfaces();
         for (Class<?> clazz : interfaces) {
-            allMethods.putAll(getAllMethods(clazz));
+            allMethods.putAll(getAllMethods(clazz, interfaceName, interfaceId));
         }
         Method[] declaredMethods = interfaceClass.getDeclaredMethods();
         for (Method method : declaredMethods) {
             String methodStr = method.toGenericString().replace("public ", "").replace("abstract", "").trim();
-            allMethods.put(method, StringUtils.toNumber(methodStr));
+            allMethods.put(method, new RpcMethod(interfaceName, method.getName(), interfaceId, StringUtils.toNumber(methodStr)));
         }
         return allMethods;
     }
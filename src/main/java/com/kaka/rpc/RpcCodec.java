@@ -0,0 +1,24 @@
+package com.kaka.rpc;
+
+import java.lang.annotation.*;
+
+/**
+ * 标注于RPC参数或返回值的数据类，编译期由 {@link com.kaka.rpc.codec.RpcCodecProcessor} 生成直接读写ByteBuf的编解码器，
+ * 不再经由序列化器反射序列化 <br>
+ * 记录类按组件顺序编解码；普通类须有非私有的无参构造方法，按字段声明顺序（父类字段在前）编解码，
+ * 跳过static与transient字段，私有字段须有对应的getter与setter <br>
+ * 双方须使用相同的编解码器，且客户端须开启原生编码，参看 {@link com.kaka.rpc.core.NettyClient#setNativeTypes(boolean)}
+ *
+ * @author zkpursuit
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface RpcCodec {
+    /**
+     * 类型唯一标识，写入数据包以代替类名，为0时取类名的哈希值
+     *
+     * @return 类型唯一标识
+     */
+    int id() default 0;
+}
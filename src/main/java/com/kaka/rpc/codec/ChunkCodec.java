@@ -0,0 +1,132 @@
+package com.kaka.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+/**
+ * 分片编解码器，须添加在长度编解码器之后 <br>
+ * 超过单个数据包长度上限的消息被拆分为多个分片数据包发送，接收方逐个分片组装为完整消息 <br>
+ * 分片数据包结构：4字节分片操作码+1字节是否为最后一个分片+分片数据 <br>
+ * 拆分时以分片头与原始消息切片组合，组装时以复合缓冲区引用各分片，均不复制数据 <br>
+ * 每个连接独立一个实例，同一连接的分片总是连续发出，组装中的消息不超过每连接的内存预算 <br>
+ * 连接握手确认对端支持分片并调用 {@link #enable()} 后才拆分发出的消息，此前超长的消息原样发出
+ *
+ * @author zkpursuit
+ */
+public class ChunkCodec extends MessageToMessageCodec<ByteBuf, ByteBuf> {
+
+    /**
+     * 分片数据包操作码
+     */
+    public static final int opcode = -107;
+    private static final int header_length = 5;
+    private static final int length_field_length = 4; //长度编码器写入的长度头
+
+    private volatile int maxBodyLength; //单个数据包不含长度头的最大字节数
+    private volatile boolean peerSupported; //对端是否支持分片
+    private final int maxMessageLength;
+    private CompositeByteBuf assembling; //组装中的消息
+    private boolean discarding; //消息超出预算，丢弃至最后一个分片
+
+    /**
+     * 构造方法
+     *
+     * @param maxFrameLength   单个数据包含长度头的最大字节数，与对端长度解码器的上限一致
+     * @param maxMessageLength 组装后消息的最大字节数，即每连接组装消息的内存预算
+     */
+    public ChunkCodec(int maxFrameLength, int maxMessageLength) {
+        if (maxFrameLength <= length_field_length + header_length) {
+            throw new IllegalArgumentException("maxFrameLength必须大于" + (length_field_length + header_length));
+        }
+        this.maxBodyLength = maxFrameLength - length_field_length;
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * 设置单个数据包含长度头的最大字节数，用于握手后按双方较小的上限分片
+     *
+     * @param maxFrameLength 单个数据包含长度头的最大字节数，不大于分片头长度时忽略
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        if (maxFrameLength > length_field_length + header_length) {
+            this.maxBodyLength = maxFrameLength - length_field_length;
+        }
+    }
+
+    /**
+     * 开启发出消息的分片，连接握手确认对端支持分片后调用
+     */
+    public void enable() {
+        this.peerSupported = true;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        int length = msg.readableBytes();
+        int maxBodyLength = this.maxBodyLength;
+        if (!peerSupported || length <= maxBodyLength) {
+            out.add(msg.retain());
+            return;
+        }
+        int chunkLength = maxBodyLength - header_length;
+        int index = msg.readerIndex();
+        int end = index + length;
+        while (index < end) {
+            int n = Math.min(chunkLength, end - index);
+            ByteBuf header = ctx.alloc().buffer(header_length);
+            header.writeInt(opcode);
+            header.writeBoolean(index + n == end);
+            CompositeByteBuf chunk = ctx.alloc().compositeBuffer(2);
+            chunk.addComponents(true, header, msg.retainedSlice(index, n));
+            out.add(chunk);
+            index += n;
+        }
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        if (msg.readableBytes() < header_length || msg.getInt(msg.readerIndex()) != opcode) {
+            out.add(msg.retain());
+            return;
+        }
+        msg.skipBytes(4);
+        boolean last = msg.readBoolean();
+        int length = msg.readableBytes();
+        if (discarding) {
+            discarding = !last;
+            return;
+        }
+        if (assembling == null) {
+            assembling = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+        }
+        if (assembling.readableBytes() + length > maxMessageLength) {
+            int assembled = assembling.readableBytes();
+            reset();
+            discarding = !last;
+            throw new TooLongFrameException("分片消息长度超出限制：" + maxMessageLength + "，已组装：" + assembled);
+        }
+        assembling.addComponent(true, msg.retainedSlice());
+        if (last) {
+            out.add(assembling);
+            assembling = null;
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        reset();
+        super.handlerRemoved(ctx);
+    }
+
+    private void reset() {
+        if (assembling != null) {
+            assembling.release();
+            assembling = null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.kaka.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 数据压缩编解码器，须添加在长度编解码器之后 <br>
+ * 压缩数据包结构：4字节压缩操作码+4字节原始长度+Deflate压缩数据 <br>
+ * 仅在连接握手确认对端同样开启压缩后才压缩发出的数据包，未完成握手或对端不支持压缩时双方始终以原始数据通信 <br>
+ * 每个连接独立一个实例，编解码均在连接所属的IO线程中执行，压缩开关可由其它线程设置
+ *
+ * @author zkpursuit
+ */
+public class CompressionCodec extends MessageToMessageCodec<ByteBuf, ByteBuf> {
+
+    /**
+     * 压缩数据包操作码
+     */
+    public static final int opcode = -106;
+
+    private final int threshold;
+    private final int maxFrameLength;
+    private volatile boolean peerSupported; //对端是否支持压缩
+    private Deflater deflater;
+    private Inflater inflater;
+
+    /**
+     * 构造方法
+     *
+     * @param threshold      数据包达到此字节数时才压缩
+     * @param maxFrameLength 解压后数据包的最大字节数
+     */
+    public CompressionCodec(int threshold, int maxFrameLength) {
+        this.threshold = Math.max(threshold, 16);
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * 开启发出数据包的压缩，连接握手确认对端支持压缩后调用
+     */
+    public void enable() {
+        this.peerSupported = true;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (deflater != null) deflater.end();
+        if (inflater != null) inflater.end();
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        int length = msg.readableBytes();
+        if (!peerSupported || length < threshold) {
+            out.add(msg.retain());
+            return;
+        }
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        ByteBuf buf = ctx.alloc().buffer(length);
+        //压缩后数据不小于原始数据时直接发送原始数据
+        ByteBuffer dst = buf.nioBuffer(8, length - 8);
+        deflater.setInput(msg.nioBuffer());
+        deflater.finish();
+        while (!deflater.finished() && dst.hasRemaining()) {
+            deflater.deflate(dst);
+        }
+        boolean finished = deflater.finished();
+        deflater.reset();
+        if (!finished) {
+            buf.release();
+            out.add(msg.retain());
+            return;
+        }
+        buf.writeInt(opcode);
+        buf.writeInt(length);
+        buf.writerIndex(8 + dst.position());
+        out.add(buf);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        if (msg.readableBytes() < 8 || msg.getInt(msg.readerIndex()) != opcode) {
+            out.add(msg.retain());
+            return;
+        }
+        msg.skipBytes(4);
+        int length = msg.readInt();
+        if (length <= 0 || length > maxFrameLength) {
+            throw new CorruptedFrameException("解压后数据长度超出限制：" + length);
+        }
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        ByteBuf buf = ctx.alloc().buffer(length, length);
+        try {
+            ByteBuffer dst = buf.nioBuffer(0, length);
+            inflater.setInput(msg.nioBuffer());
+            while (!inflater.finished()) {
+                if (inflater.inflate(dst) == 0 && (!dst.hasRemaining() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+            if (!inflater.finished() || dst.hasRemaining()) {
+                throw new CorruptedFrameException("压缩数据与原始长度不符");
+            }
+            buf.writerIndex(length);
+            out.add(buf);
+            buf = null;
+        } catch (DataFormatException e) {
+            throw new CorruptedFrameException(e);
+        } finally {
+            inflater.reset();
+            if (buf != null) buf.release();
+        }
+    }
+}
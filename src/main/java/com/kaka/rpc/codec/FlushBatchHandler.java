@@ -0,0 +1,163 @@
+package com.kaka.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并刷新处理器，须添加在全部编解码器之后 <br>
+ * 读取数据包期间的刷新推迟至本轮读取完成后一次执行；读取之外的刷新（如业务线程写出的响应与推送）推迟至IO线程当前任务批次之后，
+ * 或按设置的延迟执行，期间的写出一并刷新；待刷新字节数达到阈值时立即刷新 <br>
+ * 每个连接独立一个实例，均在连接所属的IO线程中执行
+ *
+ * @author zkpursuit
+ */
+public class FlushBatchHandler extends ChannelDuplexHandler {
+
+    /**
+     * 合并刷新统计，可由多个连接共享
+     */
+    public static class Stats {
+        private final LongAdder writes = new LongAdder();
+        private final LongAdder flushes = new LongAdder();
+
+        /**
+         * @return 已刷新的写出次数
+         */
+        public long getWrites() {
+            return writes.sum();
+        }
+
+        /**
+         * @return 实际执行的刷新次数
+         */
+        public long getFlushes() {
+            return flushes.sum();
+        }
+
+        /**
+         * @return 平均每次刷新的写出次数
+         */
+        public double getAverageBatchSize() {
+            long flushes = getFlushes();
+            return flushes == 0 ? 0 : (double) getWrites() / flushes;
+        }
+    }
+
+    private final long maxDelayNanos;
+    private final int maxPendingBytes;
+    private final Stats stats;
+    private final Runnable flushTask;
+    private ChannelHandlerContext ctx;
+    private boolean reading; //是否正在读取数据包
+    private boolean flushPending; //是否有推迟的刷新
+    private int pendingWrites;
+    private long pendingBytes;
+    private Future<?> scheduled;
+
+    /**
+     * 构造方法
+     *
+     * @param maxDelayMicros  读取之外的刷新最多推迟的微秒数，为0时推迟至IO线程当前任务批次之后
+     * @param maxPendingBytes 待刷新字节数达到此值时立即刷新
+     * @param stats           合并刷新统计，可为null
+     */
+    public FlushBatchHandler(int maxDelayMicros, int maxPendingBytes, Stats stats) {
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(maxDelayMicros, 0));
+        this.maxPendingBytes = maxPendingBytes;
+        this.stats = stats;
+        this.flushTask = () -> {
+            scheduled = null;
+            if (flushPending) flushNow();
+        };
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        reading = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        reading = false;
+        if (flushPending) flushNow();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingWrites++;
+        if (msg instanceof ByteBuf buf) {
+            pendingBytes += buf.readableBytes();
+        } else if (msg instanceof ByteBufHolder holder) {
+            pendingBytes += holder.content().readableBytes();
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushPending = true;
+        if (pendingBytes >= maxPendingBytes) {
+            flushNow();
+        } else if (!reading && scheduled == null) {
+            if (maxDelayNanos > 0) {
+                scheduled = ctx.executor().schedule(flushTask, maxDelayNanos, TimeUnit.NANOSECONDS);
+            } else {
+                scheduled = ctx.executor().submit(flushTask);
+            }
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable() && flushPending) flushNow();
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (flushPending) flushNow();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (flushPending) flushNow();
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (flushPending) flushNow();
+        super.handlerRemoved(ctx);
+    }
+
+    private void flushNow() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        if (stats != null && pendingWrites > 0) {
+            stats.writes.add(pendingWrites);
+            stats.flushes.increment();
+        }
+        flushPending = false;
+        pendingWrites = 0;
+        pendingBytes = 0;
+        ctx.flush();
+    }
+}
@@ -0,0 +1,44 @@
+package com.kaka.rpc.codec;
+
+import com.kaka.util.JdkSerializer;
+
+import java.io.*;
+
+/**
+ * 基于JDK对象流的流式序列化器，与{@link JdkSerializer}的数据格式一致
+ *
+ * @author zkpursuit
+ */
+public class JdkStreamSerializer extends JdkSerializer implements StreamSerializer<Object> {
+
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(obj);
+        oos.flush();
+    }
+
+    @Override
+    public Object deserialize(InputStream in) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(in) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                if (loader != null) {
+                    try {
+                        return Class.forName(desc.getName(), false, loader);
+                    } catch (ClassNotFoundException ignored) {
+                        //由默认类加载器加载
+                    }
+                }
+                return super.resolveClass(desc);
+            }
+        };
+        try {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
+
+}
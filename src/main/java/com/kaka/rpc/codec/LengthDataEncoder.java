@@ -2,18 +2,53 @@ package com.kaka.rpc.codec;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
 
 /**
- * 通信协议编码器
+ * 通信协议编码器 <br>
+ * 数据包结构：4字节数据内容长度+数据内容 <br>
+ * 数据内容小于复制阈值时与长度头复制到同一缓冲区写出；达到阈值时仅分配4字节的长度头，与数据内容一同聚集写出，不复制数据内容，
+ * 小数据包复制的开销低于多一个缓冲区的分配与聚集写出
  *
  * @author zkpursuit
  */
-public class LengthDataEncoder extends MessageToByteEncoder<ByteBuf> {
+public class LengthDataEncoder extends MessageToMessageEncoder<ByteBuf> {
+
+    /**
+     * 默认复制阈值字节数
+     */
+    public static final int default_copy_threshold = 8 * 1024;
+
+    private final int copyThreshold;
+
+    public LengthDataEncoder() {
+        this(default_copy_threshold);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param copyThreshold 复制阈值字节数，数据内容小于此值时复制，为0时总是不复制
+     */
+    public LengthDataEncoder(int copyThreshold) {
+        this.copyThreshold = copyThreshold;
+    }
+
     @Override
-    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) throws Exception {
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
         int length = msg.readableBytes();
-        out.writeInt(length);
-        out.writeBytes(msg);
+        if (length < copyThreshold) {
+            ByteBuf frame = ctx.alloc().ioBuffer(4 + length);
+            frame.writeInt(length);
+            frame.writeBytes(msg, msg.readerIndex(), length);
+            out.add(frame);
+            return;
+        }
+        ByteBuf header = ctx.alloc().ioBuffer(4);
+        header.writeInt(length);
+        out.add(header);
+        out.add(msg.retain());
     }
 }
@@ -0,0 +1,91 @@
+package com.kaka.rpc.codec;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 原生编码的枚举类与记录类注册表 <br>
+ * 原生编码以类名传递枚举与记录类，仅已注册的类以原生编码写入，解码时也仅还原已注册的类，不按对端传入的类名加载任意类 <br>
+ * 服务接口注册及客户端创建接口代理时自动注册接口方法参数与返回值中出现的枚举类与记录类（含泛型参数、数组元素及记录类组件），
+ * 未注册的类（如事件调用的参数或以Object等宽泛类型声明的数据）仍交由序列化器处理，须原生编码时经 {@link #register(Class)} 手动注册，
+ * 通信双方须注册相同的类
+ *
+ * @author zkpursuit
+ */
+public final class NativeTypeRegistry {
+
+    private static final Map<String, Class<?>> classes = new ConcurrentHashMap<>(); //类名->枚举类或记录类
+    private static final Map<Class<?>, Boolean> interfaces = new ConcurrentHashMap<>(); //已扫描的接口
+
+    private NativeTypeRegistry() {
+    }
+
+    /**
+     * 注册枚举类或记录类，记录类的组件类型一并注册
+     *
+     * @param type 枚举类或记录类
+     * @throws IllegalArgumentException 非枚举类或记录类
+     */
+    public static void register(Class<?> type) {
+        if (!type.isEnum() && !type.isRecord()) {
+            throw new IllegalArgumentException("非枚举类或记录类：" + type.getName());
+        }
+        registerType(type);
+    }
+
+    /**
+     * 注册接口全部方法参数与返回值中出现的枚举类与记录类
+     *
+     * @param interfaceClass 接口类
+     */
+    public static void registerInterface(Class<?> interfaceClass) {
+        if (interfaces.putIfAbsent(interfaceClass, Boolean.TRUE) != null) return;
+        for (Method method : interfaceClass.getMethods()) {
+            registerType(method.getGenericReturnType());
+            for (Type type : method.getGenericParameterTypes()) {
+                registerType(type);
+            }
+        }
+    }
+
+    /**
+     * 根据类名获取已注册的枚举类或记录类
+     *
+     * @param className 类名
+     * @return 枚举类或记录类，未注册时返回null
+     */
+    public static Class<?> get(String className) {
+        return classes.get(className);
+    }
+
+    private static void registerType(Type type) {
+        if (type instanceof Class<?> clazz) {
+            if (clazz.isArray()) {
+                registerType(clazz.getComponentType());
+            } else if (clazz.isEnum()) {
+                classes.putIfAbsent(clazz.getName(), clazz);
+            } else if (clazz.isRecord() && classes.putIfAbsent(clazz.getName(), clazz) == null) {
+                for (RecordComponent component : clazz.getRecordComponents()) {
+                    registerType(component.getGenericType());
+                }
+            }
+        } else if (type instanceof ParameterizedType parameterized) {
+            registerType(parameterized.getRawType());
+            for (Type argument : parameterized.getActualTypeArguments()) {
+                registerType(argument);
+            }
+        } else if (type instanceof GenericArrayType array) {
+            registerType(array.getGenericComponentType());
+        } else if (type instanceof WildcardType wildcard) {
+            for (Type bound : wildcard.getUpperBounds()) {
+                registerType(bound);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.kaka.rpc.codec;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * {@link com.kaka.rpc.RpcCodec} 注解处理器，为标注的类生成 {@link TypeCodec} 实现，
+ * 并声明于 META-INF/services/com.kaka.rpc.codec.TypeCodec 以供 {@link TypeCodecs} 加载 <br>
+ * 生成的编解码器位于标注类所在包，类名为标注类的嵌套名以下划线连接并以_RpcCodec结尾 <br>
+ * 本项目自身编译时不执行注解处理，使用方依赖本项目后将自动发现此处理器
+ *
+ * @author zkpursuit
+ */
+@SupportedAnnotationTypes("com.kaka.rpc.RpcCodec")
+public class RpcCodecProcessor extends AbstractProcessor {
+
+    private static final String annotation_name = "com.kaka.rpc.RpcCodec";
+    private static final String service_file = "META-INF/services/com.kaka.rpc.codec.TypeCodec";
+
+    /**
+     * 编解码的属性，字段或记录类组件
+     *
+     * @param type   属性类型
+     * @param getter 读取属性的表达式，字段名或getter调用
+     * @param setter 字段名或setter方法名，记录类为null
+     * @param field  是否直接访问字段
+     */
+    private record Property(TypeMirror type, String getter, String setter, boolean field) {
+    }
+
+    private final Set<String> codecNames = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!codecNames.isEmpty()) writeServiceFile();
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof TypeElement type) {
+                    try {
+                        generate(type);
+                    } catch (IllegalArgumentException e) {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), element);
+                    } catch (IOException e) {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "生成编解码器失败：" + e, element);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        if (type.getKind() != ElementKind.CLASS && type.getKind() != ElementKind.RECORD) {
+            throw new IllegalArgumentException("@RpcCodec仅能标注类或记录类");
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new IllegalArgumentException("@RpcCodec不能标注抽象类");
+        }
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            throw new IllegalArgumentException("@RpcCodec不能标注私有类");
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC) && type.getKind() == ElementKind.CLASS) {
+            throw new IllegalArgumentException("@RpcCodec不能标注非静态内部类");
+        }
+        boolean isRecord = type.getKind() == ElementKind.RECORD;
+        List<Property> properties = isRecord ? recordProperties(type) : classProperties(type);
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleBinaryName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        String codecName = simpleBinaryName.replace('$', '_') + "_RpcCodec";
+        String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        String typeName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+        int id = typeId(type, binaryName);
+
+        StringBuilder sb = new StringBuilder(1024);
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import com.kaka.rpc.codec.TypeCodec;\n");
+        sb.append("import com.kaka.rpc.codec.ValueCodec;\n");
+        sb.append("import io.netty.buffer.ByteBuf;\n\n");
+        sb.append("/**\n * ").append(binaryName).append(" 的编解码器，由RpcCodecProcessor生成，请勿修改\n */\n");
+        sb.append("@javax.annotation.processing.Generated(\"").append(RpcCodecProcessor.class.getName()).append("\")\n");
+        sb.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        sb.append("public final class ").append(codecName).append(" implements TypeCodec<").append(typeName).append("> {\n\n");
+        sb.append("    @Override\n    public Class<").append(typeName).append("> type() {\n");
+        sb.append("        return ").append(typeName).append(".class;\n    }\n\n");
+        sb.append("    @Override\n    public int id() {\n        return ").append(id).append(";\n    }\n\n");
+        sb.append("    @Override\n    public void write(ByteBuf buf, ").append(typeName).append(" value, ValueCodec values) {\n");
+        for (Property p : properties) {
+            sb.append("        ").append(writeStatement(p.type, "value." + p.getter)).append(";\n");
+        }
+        sb.append("    }\n\n");
+        sb.append("    @Override\n    public ").append(typeName).append(" read(ByteBuf buf, ValueCodec values) {\n");
+        if (isRecord) {
+            StringJoiner args = new StringJoiner(", ");
+            for (int i = 0; i < properties.size(); i++) {
+                Property p = properties.get(i);
+                sb.append("        ").append(castName(p.type)).append(" f").append(i).append(" = ").append(readExpression(p.type)).append(";\n");
+                args.add("f" + i);
+            }
+            sb.append("        return new ").append(typeName).append("(").append(args).append(");\n");
+        } else {
+            sb.append("        ").append(typeName).append(" value = new ").append(typeName).append("();\n");
+            for (Property p : properties) {
+                String expression = readExpression(p.type);
+                if (p.field) {
+                    sb.append("        value.").append(p.setter).append(" = ").append(expression).append(";\n");
+                } else {
+                    sb.append("        value.").append(p.setter).append("(").append(expression).append(");\n");
+                }
+            }
+            sb.append("        return value;\n");
+        }
+        sb.append("    }\n}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter()) {
+            writer.write(sb.toString());
+        }
+        codecNames.add(qualifiedCodecName);
+    }
+
+    private int typeId(TypeElement type, String binaryName) {
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation_name)) continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : mirror.getElementValues().entrySet()) {
+                if (e.getKey().getSimpleName().contentEquals("id")) {
+                    int id = (Integer) e.getValue().getValue();
+                    if (id != 0) return id;
+                }
+            }
+        }
+        return binaryName.hashCode();
+    }
+
+    private List<Property> recordProperties(TypeElement type) {
+        List<Property> properties = new ArrayList<>();
+        for (RecordComponentElement component : type.getRecordComponents()) {
+            properties.add(new Property(component.asType(), component.getAccessor().getSimpleName() + "()", null, false));
+        }
+        return properties;
+    }
+
+    private List<Property> classProperties(TypeElement type) {
+        boolean hasConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor = true;
+                break;
+            }
+        }
+        if (!hasConstructor) {
+            throw new IllegalArgumentException("@RpcCodec标注的类须有非私有的无参构造方法：" + type.getQualifiedName());
+        }
+        List<TypeElement> hierarchy = new ArrayList<>();
+        for (TypeElement t = type; t != null && !t.getQualifiedName().contentEquals("java.lang.Object"); ) {
+            hierarchy.add(0, t);
+            TypeMirror superclass = t.getSuperclass();
+            t = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type));
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        List<Property> properties = new ArrayList<>();
+        for (TypeElement t : hierarchy) {
+            for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+                String name = field.getSimpleName().toString();
+                boolean accessible = !modifiers.contains(Modifier.PRIVATE) && (modifiers.contains(Modifier.PUBLIC)
+                        || packageName.equals(processingEnv.getElementUtils().getPackageOf(t).getQualifiedName().toString()));
+                if (accessible && !modifiers.contains(Modifier.FINAL)) {
+                    properties.add(new Property(field.asType(), name, name, true));
+                    continue;
+                }
+                String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                String getter = findMethod(methods, field.asType(), true, "get" + suffix, "is" + suffix);
+                String setter = findMethod(methods, field.asType(), false, "set" + suffix);
+                if (getter == null || setter == null) {
+                    throw new IllegalArgumentException("字段" + t.getSimpleName() + "." + name + "无法访问，须为非私有非final字段，或提供getter与setter");
+                }
+                properties.add(new Property(field.asType(), getter + "()", setter, false));
+            }
+        }
+        return properties;
+    }
+
+    private String findMethod(List<ExecutableElement> methods, TypeMirror fieldType, boolean getter, String... names) {
+        for (ExecutableElement method : methods) {
+            if (method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) continue;
+            String methodName = method.getSimpleName().toString();
+            if (!Arrays.asList(names).contains(methodName)) continue;
+            if (getter) {
+                if (method.getParameters().isEmpty() && processingEnv.getTypeUtils().isSameType(method.getReturnType(), fieldType)) {
+                    return methodName;
+                }
+            } else if (method.getParameters().size() == 1 && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), fieldType)) {
+                return methodName;
+            }
+        }
+        return null;
+    }
+
+    private static String writeStatement(TypeMirror type, String expression) {
+        return switch (type.getKind()) {
+            case BOOLEAN -> "buf.writeBoolean(" + expression + ")";
+            case BYTE -> "buf.writeByte(" + expression + ")";
+            case SHORT -> "values.writeShort(buf, " + expression + ")";
+            case CHAR -> "values.writeChar(buf, " + expression + ")";
+            case INT -> "values.writeInt(buf, " + expression + ")";
+            case LONG -> "values.writeLong(buf, " + expression + ")";
+            case FLOAT -> "buf.writeFloat(" + expression + ")";
+            case DOUBLE -> "buf.writeDouble(" + expression + ")";
+            default -> "values.writeValue(buf, " + expression + ")";
+        };
+    }
+
+    private String readExpression(TypeMirror type) {
+        return switch (type.getKind()) {
+            case BOOLEAN -> "buf.readBoolean()";
+            case BYTE -> "buf.readByte()";
+            case SHORT -> "values.readShort(buf)";
+            case CHAR -> "values.readChar(buf)";
+            case INT -> "values.readInt(buf)";
+            case LONG -> "values.readLong(buf)";
+            case FLOAT -> "buf.readFloat()";
+            case DOUBLE -> "buf.readDouble()";
+            default -> "(" + castName(type) + ") values.readValue(buf)";
+        };
+    }
+
+    private String castName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) return type.toString();
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    /**
+     * 写入服务声明文件，合并增量编译时已存在的声明
+     */
+    private void writeServiceFile() {
+        Filer filer = processingEnv.getFiler();
+        Set<String> names = new TreeSet<>(codecNames);
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", service_file);
+            try (BufferedReader reader = new BufferedReader(existing.openReader(true))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) names.add(line);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            //首次编译时不存在
+        }
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", service_file);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String name : names) {
+                    writer.write(name);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "写入" + service_file + "失败：" + e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.kaka.rpc.codec;
+
+import com.kaka.util.Serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 流式序列化器 <br>
+ * 非基础类型数据将直接序列化至发送缓冲区，或直接由接收缓冲区反序列化，避免中间字节数组的复制
+ *
+ * @param <T> 序列化对象类型限定
+ * @author zkpursuit
+ */
+public interface StreamSerializer<T> extends Serializer<T> {
+
+    /**
+     * 序列化对象至输出流
+     *
+     * @param obj 待序列化的对象
+     * @param out 输出流，由调用方关闭
+     * @throws IOException 序列化失败
+     */
+    void serialize(T obj, OutputStream out) throws IOException;
+
+    /**
+     * 由输入流反序列化对象
+     *
+     * @param in 输入流，仅包含一个对象的数据，由调用方关闭
+     * @return 反序列化后的对象
+     * @throws IOException 反序列化失败
+     */
+    T deserialize(InputStream in) throws IOException;
+
+}
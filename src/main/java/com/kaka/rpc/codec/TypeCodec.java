@@ -0,0 +1,45 @@
+package com.kaka.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 类型编解码器，通常由 {@link RpcCodecProcessor} 为标注 {@link com.kaka.rpc.RpcCodec} 的类生成，
+ * 亦可手动实现后经 {@link TypeCodecs#register(TypeCodec)} 注册
+ *
+ * @param <T> 编解码的类型
+ * @author zkpursuit
+ */
+public interface TypeCodec<T> {
+
+    /**
+     * 获取编解码的类型，仅匹配确切类型，不匹配其子类
+     *
+     * @return 编解码的类型
+     */
+    Class<T> type();
+
+    /**
+     * 获取类型唯一标识，双方须一致
+     *
+     * @return 类型唯一标识
+     */
+    int id();
+
+    /**
+     * 写入对象
+     *
+     * @param buf    字节缓冲区
+     * @param value  非null对象
+     * @param values 字段值编解码器
+     */
+    void write(ByteBuf buf, T value, ValueCodec values);
+
+    /**
+     * 读取对象
+     *
+     * @param buf    字节缓冲区
+     * @param values 字段值编解码器
+     * @return 对象
+     */
+    T read(ByteBuf buf, ValueCodec values);
+}
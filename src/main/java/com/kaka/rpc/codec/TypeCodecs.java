@@ -0,0 +1,68 @@
+package com.kaka.rpc.codec;
+
+import io.netty.util.collection.IntObjectHashMap;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类型编解码器注册表 <br>
+ * 初始化时经 {@link ServiceLoader} 加载 META-INF/services/com.kaka.rpc.codec.TypeCodec 中声明的编解码器，
+ * 由 {@link RpcCodecProcessor} 生成的编解码器将自动声明于此
+ *
+ * @author zkpursuit
+ */
+public final class TypeCodecs {
+
+    private static final Map<Class<?>, TypeCodec<?>> types = new ConcurrentHashMap<>();
+    private static volatile IntObjectHashMap<TypeCodec<?>> ids = new IntObjectHashMap<>();
+
+    static {
+        for (TypeCodec<?> codec : ServiceLoader.load(TypeCodec.class, TypeCodecs.class.getClassLoader())) {
+            register(codec);
+        }
+    }
+
+    private TypeCodecs() {
+    }
+
+    /**
+     * 注册类型编解码器
+     *
+     * @param codec 类型编解码器
+     * @throws IllegalStateException 类型唯一标识已被其它类型占用
+     */
+    public static synchronized void register(TypeCodec<?> codec) {
+        TypeCodec<?> exists = ids.get(codec.id());
+        if (exists != null && exists.type() != codec.type()) {
+            throw new IllegalStateException("类型唯一标识" + codec.id() + "冲突：" + exists.type().getName() + "，" + codec.type().getName());
+        }
+        IntObjectHashMap<TypeCodec<?>> newIds = new IntObjectHashMap<>(ids.size() + 4);
+        newIds.putAll(ids);
+        newIds.put(codec.id(), codec);
+        ids = newIds;
+        types.put(codec.type(), codec);
+    }
+
+    /**
+     * 根据类型获取编解码器
+     *
+     * @param type 类型
+     * @return 编解码器，未注册时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TypeCodec<T> get(Class<T> type) {
+        return (TypeCodec<T>) types.get(type);
+    }
+
+    /**
+     * 根据类型唯一标识获取编解码器
+     *
+     * @param id 类型唯一标识
+     * @return 编解码器，未注册时返回null
+     */
+    public static TypeCodec<?> get(int id) {
+        return ids.get(id);
+    }
+}
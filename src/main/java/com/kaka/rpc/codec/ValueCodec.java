@@ -0,0 +1,44 @@
+package com.kaka.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 字段值编解码器，由框架按当前数据包的编码方式提供给 {@link TypeCodec} <br>
+ * 整数类型在紧凑编码下以变长字节读写，其它类型以带类型标识的通用编码读写
+ *
+ * @author zkpursuit
+ */
+public interface ValueCodec {
+
+    void writeShort(ByteBuf buf, short value);
+
+    short readShort(ByteBuf buf);
+
+    void writeChar(ByteBuf buf, char value);
+
+    char readChar(ByteBuf buf);
+
+    void writeInt(ByteBuf buf, int value);
+
+    int readInt(ByteBuf buf);
+
+    void writeLong(ByteBuf buf, long value);
+
+    long readLong(ByteBuf buf);
+
+    /**
+     * 以带类型标识的通用编码写入数据，可为null
+     *
+     * @param buf   字节缓冲区
+     * @param value 数据
+     */
+    void writeValue(ByteBuf buf, Object value);
+
+    /**
+     * 读取带类型标识的通用编码数据
+     *
+     * @param buf 字节缓冲区
+     * @return 数据
+     */
+    Object readValue(ByteBuf buf);
+}
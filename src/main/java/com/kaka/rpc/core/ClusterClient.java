@@ -71,6 +71,7 @@ abstract public class ClusterClient implements IClient {
      * @param addresses        连接的服务器地址
      * @param numberOfReplicas 负载均衡系数
      */
+    @SuppressWarnings("this-escape") //子类可覆盖createClient
     public ClusterClient(List<InetSocketAddress> addresses, int numberOfReplicas) {
         this.ch = new ConsistentHash<>(numberOfReplicas);
         for (InetSocketAddress address : addresses) {
@@ -163,6 +164,36 @@ abstract public class ClusterClient implements IClient {
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Object> execRemotingMethod0(RpcMethod method, int timeoutSeconds, Object[] params) throws Exception {
+        Unit unit = this.getUnit(method.getName());
+        if (unit != null) {
+            NettyClient client = unit.getClient();
+            if (client != null) {
+                return client.execRemotingMethod0(method, timeoutSeconds, params);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T execRemotingMethod(RpcMethod method, int timeoutSeconds, Object[] params) throws Exception {
+        Unit unit = this.getUnit(method.getName());
+        if (unit != null) {
+            NettyClient client = unit.getClient();
+            if (client != null) {
+                return client.execRemotingMethod(method, timeoutSeconds, params);
+            }
+        }
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      */
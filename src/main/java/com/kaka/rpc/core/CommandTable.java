@@ -0,0 +1,108 @@
+package com.kaka.rpc.core;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个连接独立的领域事件名索引表 <br>
+ * 客户端首次发送某领域事件时为其分配索引并随事件名一同发出，服务端在IO线程中登记，
+ * 客户端确认定义已写出后，后续请求仅发送索引；表满后超出的领域事件仍发送完整事件名 <br>
+ * 连接断开后随连接一同释放，重连后重新定义
+ *
+ * @author zkpursuit
+ */
+final class CommandTable {
+
+    private static final AttributeKey<CommandTable> key = AttributeKey.valueOf("rpcCommandTable");
+    static final int max_size = 1024;
+
+    /**
+     * 客户端领域事件索引
+     */
+    static final class Index {
+        final int index;
+        volatile boolean defined; //定义数据包是否已写出
+
+        Index(int index) {
+            this.index = index;
+        }
+    }
+
+    //客户端
+    volatile boolean supported; //服务端是否支持索引，由握手确定
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+    private final AtomicInteger indexGenerator = new AtomicInteger();
+
+    //服务端，仅由连接所属的IO线程写入
+    private volatile String[] commands = new String[16];
+
+    private CommandTable() {
+    }
+
+    /**
+     * 获取连接的领域事件名索引表，不存在时创建
+     *
+     * @param channel 连接
+     * @return 领域事件名索引表
+     */
+    static CommandTable of(Channel channel) {
+        Attribute<CommandTable> attr = channel.attr(key);
+        CommandTable table = attr.get();
+        if (table == null) {
+            CommandTable newTable = new CommandTable();
+            table = attr.setIfAbsent(newTable);
+            if (table == null) table = newTable;
+        }
+        return table;
+    }
+
+    /**
+     * 客户端获取领域事件名的索引，不存在时分配
+     *
+     * @param cmd 领域事件名
+     * @return 索引，表已满时返回null
+     */
+    Index indexOf(String cmd) {
+        Index index = indexes.get(cmd);
+        if (index != null || indexes.size() >= max_size) return index;
+        return indexes.computeIfAbsent(cmd, k -> {
+            int i = indexGenerator.getAndIncrement();
+            return i < max_size ? new Index(i) : null;
+        });
+    }
+
+    /**
+     * 服务端登记领域事件名的索引
+     *
+     * @param index 索引
+     * @param cmd   领域事件名
+     * @return 索引超出范围时返回false
+     */
+    boolean define(int index, String cmd) {
+        if (index < 0 || index >= max_size) return false;
+        String[] commands = this.commands;
+        if (index >= commands.length) {
+            commands = Arrays.copyOf(commands, Math.min(max_size, Math.max(commands.length << 1, index + 1)));
+        }
+        commands[index] = cmd;
+        this.commands = commands;
+        return true;
+    }
+
+    /**
+     * 服务端根据索引获取领域事件名
+     *
+     * @param index 索引
+     * @return 领域事件名，未定义时返回null
+     */
+    String get(int index) {
+        String[] commands = this.commands;
+        return index >= 0 && index < commands.length ? commands[index] : null;
+    }
+}
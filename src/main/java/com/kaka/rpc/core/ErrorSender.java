@@ -2,10 +2,9 @@ package com.kaka.rpc.core;
 
 import com.kaka.util.StringUtils;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 
-import java.nio.charset.StandardCharsets;
-
 /**
  * 错误发送者
  *
@@ -27,13 +26,11 @@ public interface ErrorSender {
         if (errInfoParams != null && errInfoParams.length > 0) {
             errInfo = StringUtils.format(errInfo, errInfoParams);
         }
-        byte[] errBytes = errInfo.getBytes(StandardCharsets.UTF_8);
-        ByteBuf buf = ctx.alloc().buffer(13 + errBytes.length);
+        ByteBuf buf = ctx.alloc().buffer(13 + ByteBufUtil.utf8MaxBytes(errInfo));
         buf.writeInt(triggerErrorOpcode);
         buf.writeByte(errLevel);
         buf.writeInt(errCode);
-        buf.writeInt(errBytes.length);
-        buf.writeBytes(errBytes);
+        Utils.writeString(buf, errInfo, false);
         ctx.writeAndFlush(buf);
     }
 
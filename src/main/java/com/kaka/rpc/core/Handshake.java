@@ -0,0 +1,165 @@
+package com.kaka.rpc.core;
+
+import com.kaka.rpc.codec.ChunkCodec;
+import com.kaka.rpc.codec.CompressionCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import io.netty.util.AttributeKey;
+
+import java.util.Objects;
+
+/**
+ * 连接握手参数 <br>
+ * 连接建立后客户端发出握手数据包，服务端登记协商结果后以自身参数应答，双方取各自参数与对端参数的交集作为连接的协商结果 <br>
+ * 握手数据包结构：4字节握手操作码+short协议版本+int能力位+int单个数据包最大字节数+int单个消息最大字节数+短字符串序列化器类名，
+ * 解析时忽略尾部多余字节，便于后续版本追加参数 <br>
+ * 协商结果存储为连接属性，编解码器与请求标识据此启用对应特性；未完成握手或对端不支持握手时以 {@link #legacy} 表示，
+ * 此时客户端以旧版本数据包结构发起调用，服务端按 {@link RpcInvokeHandler#flag_binary} 逐个数据包区分新旧结构
+ *
+ * @author zkpursuit
+ */
+final class Handshake {
+
+    private static final AttributeKey<Handshake> key = AttributeKey.valueOf("rpcHandshake");
+
+    /**
+     * 当前协议版本
+     */
+    static final short protocol_version = 1;
+
+    static final int cap_compact = 0x01; //紧凑编码
+    static final int cap_structured_error = 0x02; //结构化异常
+    static final int cap_native_types = 0x04; //原生编码集合、映射等类型
+    static final int cap_command_index = 0x08; //领域事件名索引
+    static final int cap_compression = 0x10; //压缩
+    static final int cap_chunk = 0x20; //分片
+    static final int cap_deadline = 0x40; //请求携带截止时间
+
+    /**
+     * 未握手或对端不支持握手时的协商结果，不启用任何可选特性
+     */
+    static final Handshake legacy = new Handshake(0, 0, 0, 0, null);
+
+    final int version;
+    final int capabilities;
+    final int maxFrameLength;
+    final int maxMessageLength;
+    final String serializer;
+
+    Handshake(int version, int capabilities, int maxFrameLength, int maxMessageLength, String serializer) {
+        this.version = version;
+        this.capabilities = capabilities;
+        this.maxFrameLength = maxFrameLength;
+        this.maxMessageLength = maxMessageLength;
+        this.serializer = serializer;
+    }
+
+    /**
+     * 本端握手参数
+     *
+     * @param compression      是否开启压缩
+     * @param maxFrameLength   单个数据包含长度头的最大字节数
+     * @param maxMessageLength 单个消息的最大字节数
+     * @param serializer       序列化器
+     * @return 握手参数
+     */
+    static Handshake local(boolean compression, int maxFrameLength, int maxMessageLength, Object serializer) {
+        int capabilities = cap_compact | cap_structured_error | cap_native_types | cap_command_index | cap_chunk | cap_deadline;
+        if (compression) capabilities |= cap_compression;
+        return new Handshake(protocol_version, capabilities, maxFrameLength, maxMessageLength,
+                serializer == null ? null : serializer.getClass().getName());
+    }
+
+    /**
+     * 是否具备某项能力
+     *
+     * @param capability 能力位
+     * @return true表示具备
+     */
+    boolean has(int capability) {
+        return (capabilities & capability) != 0;
+    }
+
+    /**
+     * 与对端握手参数协商，取双方的较低版本、能力交集与较小的长度上限，序列化器不一致时为null
+     *
+     * @param peer 对端握手参数
+     * @return 协商结果
+     */
+    Handshake agree(Handshake peer) {
+        return new Handshake(Math.min(version, peer.version), capabilities & peer.capabilities,
+                Math.min(maxFrameLength, peer.maxFrameLength), Math.min(maxMessageLength, peer.maxMessageLength),
+                Objects.equals(serializer, peer.serializer) ? serializer : null);
+    }
+
+    /**
+     * 编码为握手数据包
+     *
+     * @param alloc 缓冲区分配器
+     * @return 握手数据包
+     */
+    ByteBuf encode(ByteBufAllocator alloc) {
+        ByteBuf buf = alloc.buffer(20 + (serializer == null ? 0 : ByteBufUtil.utf8MaxBytes(serializer)));
+        buf.writeInt(RpcOpCode.handshake);
+        buf.writeShort(version);
+        buf.writeInt(capabilities);
+        buf.writeInt(maxFrameLength);
+        buf.writeInt(maxMessageLength);
+        Utils.writeShortString(buf, serializer == null ? "" : serializer);
+        return buf;
+    }
+
+    /**
+     * 读取握手数据包，不含握手操作码
+     *
+     * @param buf 字节缓冲区
+     * @return 对端握手参数
+     */
+    static Handshake decode(ByteBuf buf) {
+        int version = buf.readShort();
+        int capabilities = buf.readInt();
+        int maxFrameLength = buf.readInt();
+        int maxMessageLength = buf.readInt();
+        String serializer = Utils.readShortString(buf);
+        return new Handshake(version, capabilities, maxFrameLength, maxMessageLength, serializer.isEmpty() ? null : serializer);
+    }
+
+    /**
+     * 获取连接的协商结果
+     *
+     * @param channel 连接
+     * @return 协商结果，未完成握手时返回 {@link #legacy}
+     */
+    static Handshake of(Channel channel) {
+        Handshake agreed = channel.attr(key).get();
+        return agreed == null ? legacy : agreed;
+    }
+
+    /**
+     * 登记连接的协商结果并应用到编解码器：双方均支持分片时按较小的数据包上限分片，双方均开启压缩时启用压缩
+     *
+     * @param channel 连接
+     * @param agreed  协商结果
+     * @return 已登记过协商结果时返回false
+     */
+    static boolean apply(Channel channel, Handshake agreed) {
+        if (channel.attr(key).setIfAbsent(agreed) != null) return false;
+        ChannelPipeline pipeline = channel.pipeline();
+        ChunkCodec chunkCodec = pipeline.get(ChunkCodec.class);
+        if (chunkCodec != null && agreed.has(cap_chunk)) {
+            if (agreed.maxFrameLength > 0) chunkCodec.setMaxFrameLength(agreed.maxFrameLength);
+            chunkCodec.enable();
+        }
+        CompressionCodec compressionCodec = pipeline.get(CompressionCodec.class);
+        if (compressionCodec != null && agreed.has(cap_compression)) {
+            compressionCodec.enable();
+        }
+        if (agreed.has(cap_command_index)) {
+            CommandTable.of(channel).supported = true;
+        }
+        return true;
+    }
+}
@@ -46,6 +46,27 @@ public interface IClient {
      */
     CompletableFuture<Object> execRemotingLogic0(final String cmd, final Object[] params) throws Exception;
 
+    /**
+     * 执行远程rpc接口方法
+     *
+     * @param method         rpc接口方法
+     * @param timeoutSeconds 超时秒数，当此值小于或等于0时，程序不会设定超时控制
+     * @param params         方法参数
+     * @return 异步结果，当 timeoutSeconds 小于或等于0时，须调用 {@code get(timeout, timeUnit)} 限定超时
+     */
+    CompletableFuture<Object> execRemotingMethod0(final RpcMethod method, final int timeoutSeconds, final Object[] params) throws Exception;
+
+    /**
+     * 执行远程rpc接口方法
+     *
+     * @param method         rpc接口方法
+     * @param timeoutSeconds 请求超时时间（秒）
+     * @param params         方法参数
+     * @return 远程服务器返回的结果
+     * @throws Exception 远端异常或者获取结果超时
+     */
+    <T> T execRemotingMethod(final RpcMethod method, final int timeoutSeconds, final Object[] params) throws Exception;
+
     /**
      * 执行远程服务器领域事件，亦可为rpc调用
      *
@@ -0,0 +1,65 @@
+package com.kaka.rpc.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端处理中请求数量限制，包括每个连接的限制与全局限制 <br>
+ * 请求分发至业务线程前获取许可，处理完成后释放，超出限制的请求直接拒绝
+ *
+ * @author zkpursuit
+ */
+final class InFlightLimiter {
+
+    private final int maxPerConnection;
+    private final int maxGlobal;
+    private final AtomicInteger global = new AtomicInteger();
+
+    /**
+     * 构造方法
+     *
+     * @param maxPerConnection 每个连接处理中请求的最大数量，小于等于0表示不限制
+     * @param maxGlobal        全部连接处理中请求的最大数量，小于等于0表示不限制
+     */
+    InFlightLimiter(int maxPerConnection, int maxGlobal) {
+        this.maxPerConnection = maxPerConnection;
+        this.maxGlobal = maxGlobal;
+    }
+
+    /**
+     * 获取许可
+     *
+     * @param connection 连接的处理中请求计数
+     * @return 超出限制时返回false
+     */
+    boolean tryAcquire(AtomicInteger connection) {
+        if (maxPerConnection > 0 && connection.incrementAndGet() > maxPerConnection) {
+            connection.decrementAndGet();
+            return false;
+        }
+        if (maxGlobal > 0 && global.incrementAndGet() > maxGlobal) {
+            global.decrementAndGet();
+            if (maxPerConnection > 0) connection.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 释放许可
+     *
+     * @param connection 连接的处理中请求计数
+     */
+    void release(AtomicInteger connection) {
+        if (maxPerConnection > 0) connection.decrementAndGet();
+        if (maxGlobal > 0) global.decrementAndGet();
+    }
+
+    /**
+     * 全部连接处理中请求的数量，未限制全局数量时为0
+     *
+     * @return 处理中请求的数量
+     */
+    int inFlight() {
+        return global.get();
+    }
+}
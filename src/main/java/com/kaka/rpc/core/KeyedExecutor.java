@@ -0,0 +1,44 @@
+package com.kaka.rpc.core;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 按键有序执行器 <br>
+ * 由固定数量的串行执行器条带组成，键按哈希映射至条带，同一键的任务总是进入同一条带按提交顺序执行，
+ * 不同条带在底层执行器中并行执行；条带的任务队列无锁，空闲条带不占用线程 <br>
+ * 不同键映射至同一条带时亦按提交顺序执行，条带数应远大于底层执行器的线程数以减少相互等待
+ *
+ * @author zkpursuit
+ */
+final class KeyedExecutor {
+
+    private final SerialExecutor[] stripes;
+    private final int mask;
+
+    /**
+     * 构造方法
+     *
+     * @param executor 底层执行器
+     * @param stripes  条带数，向上取整为2的幂
+     */
+    KeyedExecutor(Executor executor, int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new SerialExecutor[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new SerialExecutor(executor);
+        }
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param key  键，相同键的任务按提交顺序执行
+     * @param task 任务
+     */
+    void execute(Object key, Runnable task) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        stripes[(h * 0x9E3779B9) >>> 16 & mask].execute(task);
+    }
+}
@@ -0,0 +1,58 @@
+package com.kaka.rpc.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 服务端方法执行器 <br>
+ * 创建时为方法编译一次展开参数数组的方法句柄，参数与返回值均已装箱为Object，调用时不再经反射校验与包装参数；
+ * 无法访问的方法以反射执行
+ *
+ * @author zkpursuit
+ */
+final class MethodInvoker {
+
+    final Method method;
+    private final MethodHandle handle; //(Object, Object[])Object，无法访问方法时为null
+
+    MethodInvoker(Method method) {
+        this.method = method;
+        this.handle = handleOf(method);
+    }
+
+    /**
+     * 执行方法，方法自身抛出的异常原样抛出
+     *
+     * @param target 方法所属对象
+     * @param params 方法参数，无参数时可为null
+     * @return 方法返回值，void方法返回null
+     * @throws Throwable 方法执行异常
+     */
+    Object invoke(Object target, Object[] params) throws Throwable {
+        if (handle != null) {
+            return (Object) handle.invokeExact(target, params);
+        }
+        try {
+            return method.invoke(target, params);
+        } catch (InvocationTargetException e) {
+            throw e.getCause(); //与方法句柄一致，抛出方法自身的异常
+        }
+    }
+
+    private static MethodHandle handleOf(Method method) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            try {
+                if (!method.trySetAccessible()) return null;
+                handle = MethodHandles.lookup().unreflect(method);
+            } catch (IllegalAccessException | SecurityException ex) {
+                return null;
+            }
+        }
+        return handle.asType(handle.type().generic()).asSpreader(Object[].class, method.getParameterCount());
+    }
+}
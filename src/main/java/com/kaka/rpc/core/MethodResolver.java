@@ -0,0 +1,201 @@
+package com.kaka.rpc.core;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以方法名及实参类型匹配重载方法，用于未携带方法ID的调用 <br>
+ * 匹配结果按（类，方法名，实参类型）缓存，首次调用时解析，包括未匹配的结果 <br>
+ * 匹配规则：仅匹配公共实例方法，参数个数一致，实参为null时匹配任意引用类型，包装类型可拆箱后经基本类型宽化匹配基本类型参数；
+ * 多个方法均可匹配时取各参数转换代价之和最小者，代价相同时依次取子类中声明者、方法签名字典序较小者，结果确定
+ *
+ * @author zkpursuit
+ */
+final class MethodResolver {
+
+    /**
+     * 方法名及实参类型，实参为null时类型为null
+     */
+    private static final class Signature {
+        final String name;
+        final Class<?>[] types;
+        final int hash;
+
+        Signature(String name, Class<?>[] types) {
+            this.name = name;
+            this.types = types;
+            this.hash = name.hashCode() * 31 + Arrays.hashCode(types);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature s && s.hash == hash && s.name.equals(name) && Arrays.equals(s.types, types);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final int max_signatures_per_class = 256; //每个类缓存的最大匹配结果数，超出后不再缓存
+    private static final int not_applicable = -1;
+    private static final Class<?>[] no_types = new Class<?>[0];
+    private static final ClassValue<Map<Signature, Optional<MethodInvoker>>> caches = new ClassValue<>() {
+        @Override
+        protected Map<Signature, Optional<MethodInvoker>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private MethodResolver() {
+    }
+
+    /**
+     * 匹配方法
+     *
+     * @param clazz      方法所属类
+     * @param methodName 方法名
+     * @param params     实参，无参数时可为null
+     * @return 方法执行器，无匹配方法时返回null
+     */
+    static MethodInvoker resolve(Class<?> clazz, String methodName, Object[] params) {
+        Class<?>[] types = no_types;
+        if (params != null && params.length > 0) {
+            types = new Class<?>[params.length];
+            for (int i = 0; i < params.length; i++) {
+                types[i] = params[i] == null ? null : params[i].getClass();
+            }
+        }
+        Signature signature = new Signature(methodName, types);
+        Map<Signature, Optional<MethodInvoker>> cache = caches.get(clazz);
+        Optional<MethodInvoker> invoker = cache.get(signature);
+        if (invoker == null) {
+            Method method = find(clazz, methodName, types);
+            invoker = method == null ? Optional.empty() : Optional.of(new MethodInvoker(method));
+            if (cache.size() < max_signatures_per_class) {
+                Optional<MethodInvoker> prev = cache.putIfAbsent(signature, invoker);
+                if (prev != null) invoker = prev;
+            }
+        }
+        return invoker.orElse(null);
+    }
+
+    private static Method find(Class<?> clazz, String methodName, Class<?>[] types) {
+        Method best = null;
+        int bestCost = Integer.MAX_VALUE;
+        for (Class<?> cls = clazz; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            Method[] methods;
+            try {
+                methods = cls.getDeclaredMethods();
+            } catch (SecurityException e) {
+                continue; //从父类中获取
+            }
+            Method clsBest = null;
+            int clsBestCost = Integer.MAX_VALUE;
+            for (Method m : methods) {
+                int modifiers = m.getModifiers();
+                if (m.isBridge() || m.isSynthetic() || !Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers)) continue;
+                if (!m.getName().equals(methodName) || m.getParameterCount() != types.length) continue;
+                int cost = cost(m.getParameterTypes(), types);
+                if (cost == not_applicable) continue;
+                if (cost < clsBestCost || (cost == clsBestCost && m.toString().compareTo(clsBest.toString()) < 0)) {
+                    clsBest = m;
+                    clsBestCost = cost;
+                }
+            }
+            if (clsBest != null && clsBestCost < bestCost) {
+                best = clsBest;
+                bestCost = clsBestCost;
+            }
+        }
+        return best;
+    }
+
+    private static int cost(Class<?>[] parameterTypes, Class<?>[] types) {
+        int total = 0;
+        for (int i = 0; i < types.length; i++) {
+            int cost = cost(parameterTypes[i], types[i]);
+            if (cost == not_applicable) return not_applicable;
+            total += cost;
+        }
+        return total;
+    }
+
+    /**
+     * 实参类型转换为形参类型的代价：相同为0，拆箱为1，拆箱后宽化为2加宽化跨度，子类型转换为父类型为10加继承距离，
+     * null转换为类为10、接口为11、Object为12
+     */
+    private static int cost(Class<?> parameterType, Class<?> type) {
+        if (parameterType == type) return 0;
+        if (type == null) {
+            if (parameterType.isPrimitive()) return not_applicable;
+            return parameterType == Object.class ? 12 : parameterType.isInterface() ? 11 : 10;
+        }
+        if (parameterType.isPrimitive()) {
+            Class<?> primitive = unbox(type);
+            if (primitive == parameterType) return 1;
+            //不可宽化为char，char不可宽化为short
+            if (primitive == null || parameterType == char.class || (primitive == char.class && parameterType == short.class)) return not_applicable;
+            int from = rank(primitive), to = rank(parameterType);
+            return from > 0 && from < to ? 2 + to - from : not_applicable;
+        }
+        if (!parameterType.isAssignableFrom(type)) return not_applicable;
+        return 10 + distance(type, parameterType);
+    }
+
+    private static Class<?> unbox(Class<?> type) {
+        if (type == Integer.class) return int.class;
+        if (type == Long.class) return long.class;
+        if (type == Float.class) return float.class;
+        if (type == Double.class) return double.class;
+        if (type == Boolean.class) return boolean.class;
+        if (type == Byte.class) return byte.class;
+        if (type == Short.class) return short.class;
+        if (type == Character.class) return char.class;
+        return null;
+    }
+
+    /**
+     * 基本类型的宽化次序，char与short次序相同，boolean为0
+     */
+    private static int rank(Class<?> type) {
+        if (type == byte.class) return 1;
+        if (type == short.class || type == char.class) return 2;
+        if (type == int.class) return 3;
+        if (type == long.class) return 4;
+        if (type == float.class) return 5;
+        if (type == double.class) return 6;
+        return 0;
+    }
+
+    /**
+     * 子类型至父类型的最短继承距离
+     */
+    private static int distance(Class<?> type, Class<?> superType) {
+        Queue<Class<?>> queue = new ArrayDeque<>();
+        Set<Class<?>> visited = new HashSet<>();
+        queue.add(type);
+        visited.add(type);
+        for (int distance = 0; !queue.isEmpty(); distance++) {
+            for (int n = queue.size(); n > 0; n--) {
+                Class<?> cls = queue.poll();
+                if (cls == superType) return distance;
+                Class<?> parent = cls.getSuperclass();
+                if (parent != null && visited.add(parent)) queue.add(parent);
+                for (Class<?> itf : cls.getInterfaces()) {
+                    if (visited.add(itf)) queue.add(itf);
+                }
+            }
+        }
+        return Integer.MAX_VALUE >> 8; //已由isAssignableFrom确认可达，不会执行至此
+    }
+}
@@ -0,0 +1,361 @@
+package com.kaka.rpc.core;
+
+import com.kaka.rpc.codec.NativeTypeRegistry;
+import com.kaka.rpc.codec.TypeCodec;
+import com.kaka.rpc.codec.TypeCodecs;
+import com.kaka.rpc.codec.ValueCodec;
+import com.kaka.util.Serializer;
+import io.netty.buffer.ByteBuf;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 常用JDK集合、Optional、枚举与记录类的原生编码，元素以 {@link Utils#writeValue} 递归编码 <br>
+ * 集合与映射仅对确切类型编码，JDK内部的非公开实现（如不可变集合、包装集合）以语义最接近的公开类型还原，
+ * 其它子类及带比较器的有序集合仍交由序列化器处理 <br>
+ * 枚举以类名+序号编码，记录类以类名+各组件值编码，经缓存的组件访问器与规范构造器读写，
+ * 仅 {@link NativeTypeRegistry} 中已注册的类以原生编码写入，解码时也仅还原已注册的类，未注册的仍交由序列化器处理 <br>
+ * 注册了 {@link TypeCodec} 的类型以类型唯一标识+编解码器写入的数据编码，优先于以上类型
+ *
+ * @author zkpursuit
+ */
+final class NativeTypes {
+
+    static final int array_list = 30;
+    static final int linked_list = 31;
+    static final int hash_set = 32;
+    static final int linked_hash_set = 33;
+    static final int tree_set = 34;
+    static final int hash_map = 35;
+    static final int linked_hash_map = 36;
+    static final int tree_map = 37;
+    static final int concurrent_hash_map = 38;
+    static final int optional = 39;
+    static final int enum_ordinal = 40;
+    static final int record = 41;
+    static final int type_codec = 50;
+
+    /**
+     * 记录类的组件访问器与规范构造器
+     */
+    private static final class RecordCodec {
+        final Method[] accessors;
+        final Constructor<?> constructor;
+
+        RecordCodec(Class<?> clazz) throws NoSuchMethodException {
+            RecordComponent[] components = clazz.getRecordComponents();
+            Class<?>[] types = new Class<?>[components.length];
+            this.accessors = new Method[components.length];
+            for (int i = 0; i < components.length; i++) {
+                types[i] = components[i].getType();
+                accessors[i] = components[i].getAccessor();
+                accessors[i].setAccessible(true);
+            }
+            this.constructor = clazz.getDeclaredConstructor(types);
+            this.constructor.setAccessible(true);
+        }
+    }
+
+    /**
+     * 提供给类型编解码器的字段值编解码器，与当前数据包的编码方式一致
+     */
+    private static final class Values implements ValueCodec {
+        private final Serializer<Object> serializer;
+        private final boolean compact;
+
+        Values(Serializer<Object> serializer, boolean compact) {
+            this.serializer = serializer;
+            this.compact = compact;
+        }
+
+        @Override
+        public void writeShort(ByteBuf buf, short value) {
+            Utils.writeShort(buf, value, compact);
+        }
+
+        @Override
+        public short readShort(ByteBuf buf) {
+            return Utils.readShort(buf, compact);
+        }
+
+        @Override
+        public void writeChar(ByteBuf buf, char value) {
+            Utils.writeChar(buf, value, compact);
+        }
+
+        @Override
+        public char readChar(ByteBuf buf) {
+            return Utils.readChar(buf, compact);
+        }
+
+        @Override
+        public void writeInt(ByteBuf buf, int value) {
+            Utils.writeInt(buf, value, compact);
+        }
+
+        @Override
+        public int readInt(ByteBuf buf) {
+            return Utils.readInt(buf, compact);
+        }
+
+        @Override
+        public void writeLong(ByteBuf buf, long value) {
+            Utils.writeLong(buf, value, compact);
+        }
+
+        @Override
+        public long readLong(ByteBuf buf) {
+            return Utils.readLong(buf, compact);
+        }
+
+        @Override
+        public void writeValue(ByteBuf buf, Object value) {
+            Utils.writeValue(buf, value, serializer, compact, true);
+        }
+
+        @Override
+        public Object readValue(ByteBuf buf) {
+            return Utils.readValue(buf, serializer, compact);
+        }
+    }
+
+    private static final ClassValue<Integer> tags = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return classify(type);
+        }
+    };
+    private static final ClassValue<RecordCodec> record_codecs = new ClassValue<>() {
+        @Override
+        protected RecordCodec computeValue(Class<?> type) {
+            try {
+                return new RecordCodec(type);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                throw new IllegalStateException("无法访问记录类的规范构造器：" + type.getName(), e);
+            }
+        }
+    };
+    private static final Map<Class<?>, Object[]> enum_constants = new ConcurrentHashMap<>(); //枚举类->枚举常量
+
+    private NativeTypes() {
+    }
+
+    private static int classify(Class<?> type) {
+        if (type == ArrayList.class) return array_list;
+        if (type == LinkedList.class) return linked_list;
+        if (type == HashSet.class) return hash_set;
+        if (type == LinkedHashSet.class) return linked_hash_set;
+        if (type == TreeSet.class) return tree_set;
+        if (type == HashMap.class) return hash_map;
+        if (type == LinkedHashMap.class) return linked_hash_map;
+        if (type == TreeMap.class) return tree_map;
+        if (type == ConcurrentHashMap.class) return concurrent_hash_map;
+        if (type == Optional.class) return optional;
+        if (type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())) return enum_ordinal;
+        if (type.isRecord()) return record;
+        if (!Modifier.isPublic(type.getModifiers()) && type.getName().startsWith("java.util.")) {
+            if (List.class.isAssignableFrom(type)) return array_list;
+            if (SortedSet.class.isAssignableFrom(type)) return tree_set;
+            if (Set.class.isAssignableFrom(type)) return linked_hash_set;
+            if (SortedMap.class.isAssignableFrom(type)) return tree_map;
+            if (Map.class.isAssignableFrom(type)) return linked_hash_map;
+        }
+        return 0;
+    }
+
+    /**
+     * 获取数据的原生编码类型
+     *
+     * @param value 非null数据
+     * @return 类型标识，不支持原生编码时返回0
+     */
+    static int tagOf(Object value) {
+        Class<?> clazz = value.getClass();
+        if (TypeCodecs.get(clazz) != null) return type_codec;
+        int tag = tags.get(clazz);
+        if (tag == enum_ordinal) {
+            Class<?> enumClass = ((Enum<?>) value).getDeclaringClass();
+            return NativeTypeRegistry.get(enumClass.getName()) == enumClass ? tag : 0;
+        }
+        if (tag == record) return NativeTypeRegistry.get(clazz.getName()) == clazz ? tag : 0;
+        if (tag == tree_set && ((SortedSet<?>) value).comparator() != null) return 0;
+        if (tag == tree_map && ((SortedMap<?, ?>) value).comparator() != null) return 0;
+        return tag;
+    }
+
+    /**
+     * 以原生编码写入数据
+     *
+     * @param buf        字节缓冲区
+     * @param value      数据
+     * @param tag        由 {@link #tagOf(Object)} 获取的类型标识
+     * @param serializer 元素中非基础类型数据序列化器
+     * @param compact    是否使用紧凑编码
+     */
+    @SuppressWarnings("unchecked")
+    static void write(ByteBuf buf, Object value, int tag, Serializer<Object> serializer, boolean compact) {
+        buf.writeByte(tag);
+        switch (tag) {
+            case array_list, linked_list, hash_set, linked_hash_set, tree_set -> {
+                Collection<?> collection = (Collection<?>) value;
+                Utils.writeLength(buf, collection.size(), compact);
+                for (Object element : collection) {
+                    Utils.writeValue(buf, element, serializer, compact, true);
+                }
+            }
+            case hash_map, linked_hash_map, tree_map -> {
+                Map<?, ?> map = (Map<?, ?>) value;
+                Utils.writeLength(buf, map.size(), compact);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    Utils.writeValue(buf, entry.getKey(), serializer, compact, true);
+                    Utils.writeValue(buf, entry.getValue(), serializer, compact, true);
+                }
+            }
+            case concurrent_hash_map -> {
+                //并发修改时size与遍历数量可能不一致，遍历后回填数量
+                int sizeIndex = buf.writerIndex();
+                if (compact) {
+                    buf.writeZero(5);
+                } else {
+                    buf.writeInt(0);
+                }
+                int size = 0;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    Utils.writeValue(buf, entry.getKey(), serializer, compact, true);
+                    Utils.writeValue(buf, entry.getValue(), serializer, compact, true);
+                    size++;
+                }
+                if (compact) {
+                    Utils.setPaddedVarInt(buf, sizeIndex, size);
+                } else {
+                    buf.setInt(sizeIndex, size);
+                }
+            }
+            case optional -> Utils.writeValue(buf, ((Optional<?>) value).orElse(null), serializer, compact, true);
+            case enum_ordinal -> {
+                Enum<?> e = (Enum<?>) value;
+                Utils.writeShortString(buf, e.getDeclaringClass().getName());
+                Utils.writeLength(buf, e.ordinal(), compact);
+            }
+            case record -> {
+                Class<?> clazz = value.getClass();
+                Utils.writeShortString(buf, clazz.getName());
+                try {
+                    for (Method accessor : record_codecs.get(clazz).accessors) {
+                        Utils.writeValue(buf, accessor.invoke(value), serializer, compact, true);
+                    }
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("读取记录类组件失败：" + clazz.getName(), e);
+                }
+            }
+            case type_codec -> {
+                TypeCodec<Object> codec = (TypeCodec<Object>) TypeCodecs.get(value.getClass());
+                Utils.writeInt(buf, codec.id(), compact);
+                codec.write(buf, value, new Values(serializer, compact));
+            }
+            default -> throw new IllegalArgumentException("不支持的原生编码类型：" + tag);
+        }
+    }
+
+    /**
+     * 读取原生编码的数据
+     *
+     * @param tag        类型标识
+     * @param buf        字节缓冲区
+     * @param serializer 元素中非基础类型数据序列化器
+     * @param compact    是否使用紧凑编码
+     * @return 数据
+     */
+    static Object read(int tag, ByteBuf buf, Serializer<Object> serializer, boolean compact) {
+        switch (tag) {
+            case array_list, linked_list, hash_set, linked_hash_set, tree_set -> {
+                int size = readSize(buf, compact);
+                Collection<Object> collection = switch (tag) {
+                    case array_list -> new ArrayList<>(size);
+                    case linked_list -> new LinkedList<>();
+                    case hash_set -> new HashSet<>(capacityOf(size));
+                    case linked_hash_set -> new LinkedHashSet<>(capacityOf(size));
+                    default -> new TreeSet<>();
+                };
+                for (int i = 0; i < size; i++) {
+                    collection.add(Utils.readValue(buf, serializer, compact));
+                }
+                return collection;
+            }
+            case hash_map, linked_hash_map, tree_map, concurrent_hash_map -> {
+                int size = readSize(buf, compact);
+                Map<Object, Object> map = switch (tag) {
+                    case hash_map -> new HashMap<>(capacityOf(size));
+                    case linked_hash_map -> new LinkedHashMap<>(capacityOf(size));
+                    case tree_map -> new TreeMap<>();
+                    default -> new ConcurrentHashMap<>(capacityOf(size));
+                };
+                for (int i = 0; i < size; i++) {
+                    Object key = Utils.readValue(buf, serializer, compact);
+                    map.put(key, Utils.readValue(buf, serializer, compact));
+                }
+                return map;
+            }
+            case optional -> {
+                return Optional.ofNullable(Utils.readValue(buf, serializer, compact));
+            }
+            case enum_ordinal -> {
+                Class<?> clazz = classOf(Utils.readShortString(buf));
+                if (!clazz.isEnum()) throw new IllegalArgumentException("非枚举类：" + clazz.getName());
+                Object[] constants = enum_constants.computeIfAbsent(clazz, Class::getEnumConstants);
+                int ordinal = Utils.readLength(buf, compact);
+                if (ordinal < 0 || ordinal >= constants.length) {
+                    throw new IllegalArgumentException("枚举序号超出范围：" + clazz.getName() + "#" + ordinal);
+                }
+                return constants[ordinal];
+            }
+            case record -> {
+                Class<?> clazz = classOf(Utils.readShortString(buf));
+                if (!clazz.isRecord()) throw new IllegalArgumentException("非记录类：" + clazz.getName());
+                RecordCodec codec = record_codecs.get(clazz);
+                Object[] args = new Object[codec.accessors.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = Utils.readValue(buf, serializer, compact);
+                }
+                try {
+                    return codec.constructor.newInstance(args);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("构造记录类失败：" + clazz.getName(), e);
+                }
+            }
+            case type_codec -> {
+                int id = Utils.readInt(buf, compact);
+                TypeCodec<?> codec = TypeCodecs.get(id);
+                if (codec == null) throw new IllegalArgumentException("未注册的类型编解码器：" + id);
+                return codec.read(buf, new Values(serializer, compact));
+            }
+            default -> throw new IllegalArgumentException("不支持的原生编码类型：" + tag);
+        }
+    }
+
+    /**
+     * 读取集合元素数量，每个元素至少1字节，超出可读字节数时视为非法数据
+     */
+    private static int readSize(ByteBuf buf, boolean compact) {
+        int size = Utils.readLength(buf, compact);
+        if (size < 0 || size > buf.readableBytes()) {
+            throw new IndexOutOfBoundsException("集合长度超出可读字节：" + size);
+        }
+        return size;
+    }
+
+    private static int capacityOf(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1.0f);
+    }
+
+    private static Class<?> classOf(String className) {
+        Class<?> clazz = NativeTypeRegistry.get(className);
+        if (clazz == null) throw new IllegalArgumentException("未注册的枚举类或记录类：" + className);
+        return clazz;
+    }
+}
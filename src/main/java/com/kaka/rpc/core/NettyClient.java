@@ -1,19 +1,19 @@
 package com.kaka.rpc.core;
 
 import ch.qos.logback.classic.Logger;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import com.kaka.notice.Facade;
 import com.kaka.notice.FacadeFactory;
+import com.kaka.rpc.codec.ChunkCodec;
+import com.kaka.rpc.codec.CompressionCodec;
+import com.kaka.rpc.codec.FlushBatchHandler;
 import com.kaka.rpc.codec.LengthDataDecoder;
+import com.kaka.rpc.codec.JdkStreamSerializer;
 import com.kaka.rpc.codec.LengthDataEncoder;
-import com.kaka.util.JdkSerializer;
-import com.kaka.util.MathUtils;
-import com.kaka.util.NanoId;
 import com.kaka.util.Serializer;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
@@ -29,9 +29,13 @@ import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 
@@ -70,6 +74,15 @@ abstract public class NettyClient implements IClient {
                 timeout.cancel();
             }
         }
+
+        public void fail(Throwable cause) {
+            if (timeout != null && !timeout.isCancelled()) {
+                timeout.cancel();
+            }
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
     }
 
     protected final Logger logger;
@@ -84,19 +97,26 @@ abstract public class NettyClient implements IClient {
     private ChannelFuture channelFuture;
     private ChannelFuture channelCloseFuture;
     private boolean connected;
-    private final static Cache<String, RpcInvoke> rpcInvokeCache = Caffeine.newBuilder()
-            .initialCapacity(16)
-            .expireAfterAccess(30, TimeUnit.MINUTES)
-            .evictionListener((id, val, cause) -> {
-                if (val != null) {
-                    ((RpcInvoke) val).cancel();
-                }
-            })
-            .build();
+    private volatile boolean compact;
+    private volatile boolean nativeTypes = true;
+    private volatile int compressThreshold = -1;
+    private volatile int maxFrameLength = 2048;
+    private volatile int flushDelayMicros = -1;
+    private volatile int flushMaxPendingBytes = 64 * 1024;
+    private final FlushBatchHandler.Stats flushStats = new FlushBatchHandler.Stats();
+    private volatile int maxMessageLength = 16 * 1024 * 1024;
+    private volatile int maxInFlight = 0;
+    private volatile WriteBufferWaterMark writeBufferWaterMark;
+    private volatile boolean failFastWhenUnwritable = true;
+    private final RpcInvokeTable rpcInvokes = new RpcInvokeTable();
+    private final AtomicInteger rpcInvokeIdGenerator = new AtomicInteger();
+    private final Map<String, SizePredictor> requestSizePredictors = new ConcurrentHashMap<>(); //领域事件名->请求大小预测器
     private final static int rpcTimeoutSecs = Integer.parseInt(System.getProperty("rpc_timeout_seconds", "5"));
+    private final static long rpcInvokeExpireMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(System.getProperty("rpc_invoke_expire_minutes", "30"))); //未设超时的调用最长等待时间
+    private final static int handshakeTimeoutMillis = Integer.parseInt(System.getProperty("rpc_handshake_timeout_millis", "3000"));
     private final static HashedWheelTimer timer = new HashedWheelTimer();
     final static int cmd_sc_sync_result = Integer.parseInt(RpcOpCode.sc_rpc);
-    public static Serializer<Object> serializer = new JdkSerializer();
+    public static Serializer<Object> serializer = new JdkStreamSerializer();
 
     /**
      * 构造方法
@@ -192,21 +212,62 @@ abstract public class NettyClient implements IClient {
      */
     protected void processDataPacket(int opcode, ByteBuf msg) {
         if (opcode == cmd_sc_sync_result) {
-            short idLen = msg.readShort();
-            byte[] idBytes = new byte[idLen];
-            msg.readBytes(idBytes);
-            String id = new String(idBytes, StandardCharsets.UTF_8);
-            RpcInvoke rpcInvoke = getRpcInvoke(id);
-            if (rpcInvoke == null) return;
-            short cmdLen = msg.readShort();
-            byte[] cmdBytes = new byte[cmdLen];
-            msg.readBytes(cmdBytes); //读取协议号
+            if (RpcInvokeHandler.isLegacy(msg)) {
+                processLegacyResult(msg);
+                return;
+            }
+            byte flags = msg.readByte();
+            boolean compact = (flags & RpcInvokeHandler.flag_compact) != 0;
+            int id = msg.readInt();
+            if ((flags & RpcInvokeHandler.flag_command_index_ack) == 0) {
+                msg.skipBytes(msg.readShort()); //跳过回传的事件名
+            }
+            completeRpcInvoke(id, msg, compact);
+        } else if (opcode == err_code) {
+            int triggerErrorOpcode = msg.readInt();
+            int errLevel = msg.readByte();
+            int errCode = msg.readInt();
+            String errInfo = Utils.readString(msg, false);
+            this.onErrorCodeListener(triggerErrorOpcode, errLevel, errCode, errInfo);
+        } else {
+            //处理来自服务器的协议事件
+            facade.sendMessage(new RpcMessage(opcode, msg, this));
+        }
+    }
+
+    /**
+     * 处理旧版本结构的调用结果，结构为：短字符串调用ID+短字符串事件名+byte结果类型+结果 <br>
+     * 旧版本服务端总是以此结构返回，新版本服务端以此结构返回旧版本结构的请求
+     *
+     * @param msg 数据包内容，不含协议号
+     */
+    private void processLegacyResult(ByteBuf msg) {
+        int id = Integer.parseInt(msg.readCharSequence(msg.readShort(), StandardCharsets.UTF_8).toString());
+        msg.skipBytes(msg.readShort()); //跳过回传的事件名
+        completeRpcInvoke(id, msg, false);
+    }
+
+    /**
+     * 以调用结果完成缓存的调用
+     *
+     * @param id      调用ID
+     * @param msg     数据包内容，读索引位于结果类型处
+     * @param compact 结果是否为紧凑编码
+     */
+    private void completeRpcInvoke(int id, ByteBuf msg, boolean compact) {
+        RpcInvoke rpcInvoke = removeRpcInvoke(id);
+        if (rpcInvoke == null) return;
+        if (rpcInvoke.getTimeout() != null) {
+            rpcInvoke.getTimeout().cancel();
+        }
+        CompletableFuture<Object> future = rpcInvoke.getFuture();
+        try {
             int returnType = msg.readByte();
-            if (rpcInvoke.getTimeout() != null) {
-                rpcInvoke.getTimeout().cancel();
+            if (returnType == -2) {
+                future.completeExceptionally(RemoteErrors.read(msg));
+                return;
             }
-            CompletableFuture<Object> future = rpcInvoke.getFuture();
-            Object returnVal = Utils.readValue(msg, serializer);
+            Object returnVal = Utils.readValue(msg, serializer, compact);
             if (returnType == -1) {
                 String exInfo;
                 if (returnVal instanceof String) {
@@ -218,24 +279,11 @@ abstract public class NettyClient implements IClient {
                 future.completeExceptionally(new RemoteException(exInfo));
             } else {
                 //正常结果
-                try {
-                    future.complete(returnVal);
-                } catch (Exception e) {
-                    future.completeExceptionally(e);
-                }
+                future.complete(returnVal);
             }
-        } else if (opcode == err_code) {
-            int triggerErrorOpcode = msg.readInt();
-            int errLevel = msg.readByte();
-            int errCode = msg.readInt();
-            int errInfoLen = msg.readInt();
-            byte[] errInfoBytes = new byte[errInfoLen];
-            msg.readBytes(errInfoBytes);
-            String errInfo = new String(errInfoBytes, StandardCharsets.UTF_8);
-            this.onErrorCodeListener(triggerErrorOpcode, errLevel, errCode, errInfo);
-        } else {
-            //处理来自服务器的协议事件
-            facade.sendMessage(new RpcMessage(opcode, msg, this));
+        } catch (Exception e) {
+            //调用已移出缓存且不再超时，解码失败须以异常完成，否则调用方永久等待
+            future.completeExceptionally(e);
         }
     }
 
@@ -243,20 +291,36 @@ abstract public class NettyClient implements IClient {
      * 初始化编解码器
      */
     protected void initCodec(ChannelPipeline pipeline) {
-        pipeline.addLast(new LengthDataDecoder(2048)); //自定义解码器
+        pipeline.addLast(new LengthDataDecoder(maxFrameLength)); //自定义解码器
         pipeline.addLast(new LengthDataEncoder()); //自定义编码器
+        pipeline.addLast(new ChunkCodec(maxFrameLength, maxMessageLength)); //分片编解码器
+        if (compressThreshold > 0) {
+            pipeline.addLast(new CompressionCodec(compressThreshold, maxMessageLength)); //压缩编解码器
+        }
+        if (flushDelayMicros >= 0) {
+            pipeline.addLast(new FlushBatchHandler(flushDelayMicros, flushMaxPendingBytes, flushStats)); //合并刷新
+        }
     }
 
     /**
-     * 初始化连接处理器，包括数据包处理，心跳超时处理
+     * 初始化连接处理器，包括握手、数据包处理，心跳超时处理 <br>
+     * 连接建立后发出握手数据包并立即可收发数据，收到服务端应答前以旧版本数据包结构发起调用，新旧版本服务端均可处理；
+     * 收到应答后按协商结果启用新版本数据包结构及各项特性，未应答握手的旧版本服务端始终以旧版本结构通信
      *
      * @return 连接处理器
      */
     protected ChannelHandler buildHandler() {
         return new SimpleChannelInboundHandler<ByteBuf>() {
+            private Handshake handshake; //本端握手参数
+            private ScheduledFuture<?> handshakeTimeout;
+
             @Override
             protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
                 int opcode = msg.readInt();
+                if (opcode == RpcOpCode.handshake) {
+                    handshakeCompleted(ctx, handshake.agree(Handshake.decode(msg)));
+                    return;
+                }
                 processDataPacket(opcode, msg);
             }
 
@@ -264,12 +328,25 @@ abstract public class NettyClient implements IClient {
             public void channelActive(ChannelHandlerContext ctx) throws Exception {
                 super.channelActive(ctx);
                 if (!ctx.isRemoved()) {
+                    handshake = Handshake.local(compressThreshold > 0, maxFrameLength, maxMessageLength, serializer);
+                    ctx.writeAndFlush(handshake.encode(ctx.alloc()));
+                    handshakeTimeout = ctx.executor().schedule(() -> {
+                        if (logger.isInfoEnabled()) logger.info("服务端未应答握手，以旧版本数据包结构通信");
+                    }, handshakeTimeoutMillis, TimeUnit.MILLISECONDS);
                     ctxRef.set(ctx);
                     connected = true;
                     afterConnected();
                 }
             }
 
+            private void handshakeCompleted(ChannelHandlerContext ctx, Handshake agreed) {
+                if (handshakeTimeout != null) handshakeTimeout.cancel(false);
+                if (ctx.isRemoved() || !ctx.channel().isActive() || !Handshake.apply(ctx.channel(), agreed)) return;
+                if (agreed.serializer == null && logger.isWarnEnabled()) {
+                    logger.warn("客户端与服务端的序列化器不一致，客户端：{}", serializer.getClass().getName());
+                }
+            }
+
             @Override
             public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
                 super.userEventTriggered(ctx, evt);
@@ -333,6 +410,9 @@ abstract public class NettyClient implements IClient {
                     .option(ChannelOption.TCP_NODELAY, true)
                     .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout * 1000)
                     .handler(this.buildChannelInitializer(readTimeout * 1000, heartBeatInterval * 1000));
+            if (writeBufferWaterMark != null) {
+                this.bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+            }
             this.channelFuture = bootstrap.connect().sync();
             this.channelCloseFuture = this.channelFuture.channel().closeFuture().sync();
         } catch (Exception ex) {
@@ -365,6 +445,9 @@ abstract public class NettyClient implements IClient {
             ctx.channel().close();
             ctx.close();
         }
+        for (RpcInvoke rpcInvoke : rpcInvokes.removeAll()) {
+            rpcInvoke.fail(new ConnectException("Disconnect from the server"));
+        }
         if (connected) {
             connected = false;
             afterDisconnect();
@@ -390,6 +473,118 @@ abstract public class NettyClient implements IClient {
         if (this.channelFuture != null) this.channelFuture.channel().close();
     }
 
+    /**
+     * 设置是否使用紧凑编码发送请求，紧凑编码下整数与长度以LEB128变长字节编码，有符号数先经zig-zag转换 <br>
+     * 服务端将以请求相同的编码返回结果，适用于参数多为较小整数与短字符串的场景
+     *
+     * @param compact true表示使用紧凑编码
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * 是否使用紧凑编码发送请求
+     *
+     * @return true表示使用紧凑编码
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * 设置是否以原生编码发送常用集合、映射、Optional、枚举与记录类参数，默认开启 <br>
+     * 仅在握手确认服务端支持时生效，否则经序列化器序列化；服务端总是以原生编码返回结果
+     *
+     * @param nativeTypes true表示以原生编码发送
+     */
+    public void setNativeTypes(boolean nativeTypes) {
+        this.nativeTypes = nativeTypes;
+    }
+
+    /**
+     * 设置数据包压缩阈值，须在连接前设置 <br>
+     * 连接建立后经握手与服务端协商，服务端同样开启压缩时，达到阈值的数据包以Deflate压缩后发送
+     *
+     * @param compressThreshold 压缩阈值字节数，小于等于0表示不压缩
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 开启合并刷新，须在连接前设置 <br>
+     * 读取数据包期间的写出在本轮读取完成后一并刷新，其它写出最多推迟指定微秒后一并刷新，以减少系统调用次数
+     *
+     * @param maxDelayMicros  读取之外的刷新最多推迟的微秒数，为0时推迟至IO线程当前任务批次之后，小于0表示关闭合并刷新
+     * @param maxPendingBytes 待刷新字节数达到此值时立即刷新
+     */
+    public void setFlushBatching(int maxDelayMicros, int maxPendingBytes) {
+        this.flushDelayMicros = maxDelayMicros;
+        this.flushMaxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * 获取合并刷新统计，可据此查看平均每次刷新的写出次数
+     *
+     * @return 合并刷新统计
+     */
+    public FlushBatchHandler.Stats getFlushStats() {
+        return flushStats;
+    }
+
+    /**
+     * 设置单个数据包含长度头的最大字节数，默认2048，须在连接前设置 <br>
+     * 握手后按双方较小的上限分片发送
+     *
+     * @param maxFrameLength 单个数据包含长度头的最大字节数
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * 设置单个消息的最大字节数，即每个连接组装分片消息的内存预算，须在连接前设置 <br>
+     * 超过单个数据包上限的消息将拆分为多个分片发送
+     *
+     * @param maxMessageLength 单个消息的最大字节数
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * 设置等待返回的请求的最大数量，达到此数量后新的请求不再发送，直接以错误码 {@link RpcException#code_overloaded} 异常完成
+     *
+     * @param maxInFlight 等待返回的请求的最大数量，小于等于0表示不限制
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 设置发送缓冲的高低水位，须在连接前设置，默认为Netty默认值32KB/64KB <br>
+     * 水位仅决定连接是否可写，超过高水位时请求是否快速失败由 {@link #setFailFastWhenUnwritable(boolean)} 决定
+     *
+     * @param low  低水位字节数
+     * @param high 高水位字节数
+     */
+    public void setWriteBufferWaterMark(int low, int high) {
+        this.writeBufferWaterMark = new WriteBufferWaterMark(low, high);
+    }
+
+    /**
+     * 设置发送缓冲超过高水位时是否快速失败，默认true <br>
+     * 为true时，连接不可写期间新的请求不再写入，直接以错误码 {@link RpcException#code_overloaded} 异常完成，
+     * 降至低水位后恢复发送，即发送缓冲为以高水位为上限的请求队列，调用方须自行重试或降级；
+     * 为false时请求总是写入发送缓冲排队，待发送字节数不受限制，须由调用方自行限制请求速率
+     *
+     * @param failFast true表示快速失败，false表示不限制排队
+     */
+    public void setFailFastWhenUnwritable(boolean failFast) {
+        this.failFastWhenUnwritable = failFast;
+    }
+
     /**
      * 是否可以收发数据
      *
@@ -419,26 +614,38 @@ abstract public class NettyClient implements IClient {
      * @param id     异步结果对象唯一标识
      * @param result 异步结果对象
      */
-    void cacheRpcInvoke(String id, RpcInvoke result) {
-        rpcInvokeCache.put(id, result);
+    void cacheRpcInvoke(int id, RpcInvoke result) {
+        rpcInvokes.put(id, result);
     }
 
     /**
-     * 从异步结果对象缓存池中获取异步结果对象
+     * 从异步结果对象缓存池中移除并获取异步结果对象
      *
      * @param id 异步结果对象唯一标识
      * @return 异步结果对象
      */
-    RpcInvoke getRpcInvoke(String id) {
-        RpcInvoke val = rpcInvokeCache.getIfPresent(id);
-        rpcInvokeCache.invalidate(id);
-        return val;
+    RpcInvoke removeRpcInvoke(int id) {
+        return rpcInvokes.remove(id);
+    }
+
+    /**
+     * 请求未能发出时移除缓存的调用并以异常完成
+     *
+     * @param id    调用ID
+     * @param cause 异常
+     */
+    private void failRpcInvoke(int id, Throwable cause) {
+        RpcInvoke rpcInvoke = removeRpcInvoke(id);
+        if (rpcInvoke != null) rpcInvoke.fail(cause);
     }
 
-    RpcInvoke removeRpcInvoke(String id) {
-        RpcInvoke val = rpcInvokeCache.getIfPresent(id);
-        rpcInvokeCache.invalidate(id);
-        return val;
+    /**
+     * 生成本客户端内单调递增的调用ID
+     *
+     * @return 调用ID
+     */
+    private int nextRpcInvokeId() {
+        return rpcInvokeIdGenerator.incrementAndGet();
     }
 
     /**
@@ -448,27 +655,287 @@ abstract public class NettyClient implements IClient {
      * @param cmd    领域事件名
      * @param params 领域事件参数
      */
-    protected void remotingRequest(ChannelHandlerContext ctx, String id, String cmd, Object[] params) {
-        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
-        byte[] cmdBytes = cmd.getBytes(StandardCharsets.UTF_8);
-        int bufCapacity = MathUtils.nextPowerOfTwo(10 + idBytes.length + cmdBytes.length);
-        ByteBuf buf = ctx.alloc().buffer(bufCapacity);
-        buf.writeInt(RpcInvokeHandler.opcode);
-        buf.writeShort(idBytes.length);
-        buf.writeBytes(idBytes);
-        buf.writeShort(cmdBytes.length);
-        buf.writeBytes(cmdBytes);
-        if (params == null || params.length == 0) {
-            buf.writeShort(0);
-        } else {
-            buf.writeShort(params.length);
-            for (Object param : params) {
-                Utils.writeValue(buf, param, serializer);
+    protected void remotingRequest(ChannelHandlerContext ctx, int id, String cmd, Object[] params) {
+        remotingRequest(ctx, id, cmd, params, 0);
+    }
+
+    /**
+     * 请求远程服务器处理领域事件，{@link RpcInvokeHandler}
+     *
+     * @param id             前后端通信数据包唯一标识
+     * @param cmd            领域事件名
+     * @param params         领域事件参数
+     * @param deadlineMillis 传递给服务端的剩余毫秒数，服务端不再执行超时的请求，小于或等于0表示不传递
+     */
+    protected void remotingRequest(ChannelHandlerContext ctx, int id, String cmd, Object[] params, long deadlineMillis) {
+        Handshake handshake = Handshake.of(ctx.channel());
+        if (handshake == Handshake.legacy) {
+            legacyRequest(ctx, id, cmd, params);
+            return;
+        }
+        boolean compact = this.compact && handshake.has(Handshake.cap_compact);
+        int headerSize = 17 + ByteBufUtil.utf8MaxBytes(cmd) + deadlineSize(handshake, deadlineMillis);
+        int paramsSize = estimateParamsSize(params, compact);
+        SizePredictor predictor = paramsSize < 0 ? requestSizePredictors.computeIfAbsent(cmd, k -> new SizePredictor(64)) : null;
+        ByteBuf buf = ctx.alloc().buffer(predictor == null ? headerSize + paramsSize : Math.max(headerSize, predictor.predict()));
+        CommandTable.Index index;
+        try {
+            buf.writeInt(RpcInvokeHandler.opcode);
+            buf.writeByte(requestFlags(compact, handshake));
+            buf.writeInt(id);
+            CommandTable table = CommandTable.of(ctx.channel());
+            index = table.supported ? table.indexOf(cmd) : null;
+            if (index == null) {
+                buf.writeByte(RpcInvokeHandler.call_event);
+                Utils.writeShortString(buf, cmd);
+            } else if (index.defined) {
+                buf.writeByte(RpcInvokeHandler.call_event_index);
+                Utils.writeVarInt(buf, index.index);
+            } else {
+                //定义写出前其它线程的同名请求亦发送定义，服务端重复登记相同的索引与事件名
+                buf.writeByte(RpcInvokeHandler.call_event_define);
+                Utils.writeVarInt(buf, index.index);
+                Utils.writeShortString(buf, cmd);
             }
+            writeParams(buf, params, compact, handshake);
+            writeDeadline(buf, handshake, deadlineMillis);
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        if (predictor != null) {
+            predictor.record(buf.readableBytes());
+        }
+        ChannelFuture future = ctx.writeAndFlush(buf);
+        if (index != null && !index.defined) {
+            future.addListener(f -> {
+                if (f.isSuccess()) index.defined = true;
+            });
+        }
+    }
+
+    /**
+     * 请求远程服务器执行rpc接口方法，{@link RpcInvokeHandler} <br>
+     * 存在方法ID时仅发送定长的接口ID与方法ID，否则发送接口名与方法名
+     *
+     * @param id     前后端通信数据包唯一标识
+     * @param method rpc接口方法
+     * @param params 方法参数
+     */
+    protected void remotingRequest(ChannelHandlerContext ctx, int id, RpcMethod method, Object[] params) {
+        remotingRequest(ctx, id, method, params, 0);
+    }
+
+    /**
+     * 请求远程服务器执行rpc接口方法，{@link RpcInvokeHandler} <br>
+     * 存在方法ID时仅发送定长的接口ID与方法ID，否则发送接口名与方法名
+     *
+     * @param id             前后端通信数据包唯一标识
+     * @param method         rpc接口方法
+     * @param params         方法参数
+     * @param deadlineMillis 传递给服务端的剩余毫秒数，服务端不再执行超时的请求，小于或等于0表示不传递
+     */
+    protected void remotingRequest(ChannelHandlerContext ctx, int id, RpcMethod method, Object[] params, long deadlineMillis) {
+        Handshake handshake = Handshake.of(ctx.channel());
+        if (handshake == Handshake.legacy) {
+            //旧版本服务端以 rpc:接口完全限定名:接口方法名:方法ID:接口ID 解析调用
+            legacyRequest(ctx, id, method.hasId ? method.name + ":" + method.methodId + ":" + method.interfaceId : method.name, params);
+            return;
+        }
+        boolean compact = this.compact && handshake.has(Handshake.cap_compact);
+        byte flags = requestFlags(compact, handshake);
+        int paramsSize = estimateParamsSize(params, compact);
+        int trailerSize = deadlineSize(handshake, deadlineMillis);
+        int headerSize = method.hasId ? 26 + trailerSize
+                : 14 + ByteBufUtil.utf8MaxBytes(method.interfaceName) + ByteBufUtil.utf8MaxBytes(method.methodName) + trailerSize;
+        ByteBuf buf = ctx.alloc().buffer(paramsSize < 0 ? Math.max(headerSize, method.requestSize.predict()) : headerSize + paramsSize);
+        try {
+            buf.writeInt(RpcInvokeHandler.opcode);
+            buf.writeByte(flags);
+            buf.writeInt(id);
+            if (method.hasId) {
+                buf.writeByte(RpcInvokeHandler.call_method_id);
+                buf.writeLong(method.interfaceId);
+                buf.writeLong(method.methodId);
+            } else {
+                buf.writeByte(RpcInvokeHandler.call_method_name);
+                Utils.writeShortString(buf, method.interfaceName);
+                Utils.writeShortString(buf, method.methodName);
+            }
+            writeParams(buf, params, compact, handshake);
+            writeDeadline(buf, handshake, deadlineMillis);
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        if (paramsSize < 0) {
+            method.requestSize.record(buf.readableBytes());
         }
         ctx.writeAndFlush(buf);
     }
 
+    /**
+     * 截止时间在请求数据包末尾占用的字节数
+     *
+     * @param handshake      连接的协商结果
+     * @param deadlineMillis 剩余毫秒数，小于或等于0表示不传递
+     * @return 写入截止时间时为4，否则为0
+     */
+    private static int deadlineSize(Handshake handshake, long deadlineMillis) {
+        return deadlineMillis > 0 && handshake.has(Handshake.cap_deadline) ? 4 : 0;
+    }
+
+    /**
+     * 服务端支持时在请求数据包末尾写入剩余毫秒数并设置截止时间标识
+     *
+     * @param buf            已写入参数的请求数据包
+     * @param handshake      连接的协商结果
+     * @param deadlineMillis 剩余毫秒数，小于或等于0表示不传递
+     */
+    private static void writeDeadline(ByteBuf buf, Handshake handshake, long deadlineMillis) {
+        if (deadlineSize(handshake, deadlineMillis) == 0) return;
+        int flagsIndex = buf.readerIndex() + 4;
+        buf.setByte(flagsIndex, buf.getByte(flagsIndex) | RpcInvokeHandler.flag_deadline);
+        buf.writeInt((int) Math.min(deadlineMillis, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 握手未应答时以旧版本结构发起调用，数据包结构为：4字节协议号+短字符串调用ID+短字符串事件名+short参数数量+参数 <br>
+     * 参数仅以旧版本的定长编码写入，不携带截止时间
+     *
+     * @param id     调用ID，以十进制字符串发送
+     * @param cmd    领域事件名
+     * @param params 参数
+     */
+    private void legacyRequest(ChannelHandlerContext ctx, int id, String cmd, Object[] params) {
+        String idStr = String.valueOf(id);
+        int paramsSize = estimateParamsSize(params, false);
+        int headerSize = 8 + idStr.length() + ByteBufUtil.utf8MaxBytes(cmd);
+        ByteBuf buf = ctx.alloc().buffer(paramsSize < 0 ? headerSize + 64 : headerSize + paramsSize);
+        try {
+            buf.writeInt(RpcInvokeHandler.opcode);
+            Utils.writeShortString(buf, idStr);
+            Utils.writeShortString(buf, cmd);
+            int paramNum = params == null ? 0 : params.length;
+            buf.writeShort(paramNum);
+            for (int i = 0; i < paramNum; i++) {
+                Utils.writeValue(buf, params[i], serializer, false, false);
+            }
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        ctx.writeAndFlush(buf);
+    }
+
+    /**
+     * 请求数据包标识，除二进制请求头标识外仅包含握手协商一致的特性
+     *
+     * @param compact   是否使用紧凑编码，须已协商一致
+     * @param handshake 连接的协商结果
+     * @return 数据包标识
+     */
+    private static byte requestFlags(boolean compact, Handshake handshake) {
+        int flags = RpcInvokeHandler.flag_binary;
+        if (compact) flags |= RpcInvokeHandler.flag_compact;
+        if (handshake.has(Handshake.cap_structured_error)) flags |= RpcInvokeHandler.flag_structured_error;
+        if (handshake.has(Handshake.cap_native_types)) flags |= RpcInvokeHandler.flag_native_types;
+        if (handshake.has(Handshake.cap_command_index)) flags |= RpcInvokeHandler.flag_command_index;
+        return (byte) flags;
+    }
+
+    /**
+     * 估算参数编码后的字节数，包括参数数量
+     *
+     * @param params  参数
+     * @param compact 是否使用紧凑编码
+     * @return 估算的字节数，存在无法估算的参数时返回-1，由大小预测器预测
+     */
+    private static int estimateParamsSize(Object[] params, boolean compact) {
+        int size = compact ? 5 : 2; //参数数量：紧凑编码为最多5字节的变长整数，否则为short
+        if (params == null) return size;
+        for (Object param : params) {
+            int paramSize = Utils.estimateSize(param, compact);
+            if (paramSize < 0) return -1;
+            size += paramSize;
+        }
+        return size;
+    }
+
+    private void writeParams(ByteBuf buf, Object[] params, boolean compact, Handshake handshake) {
+        int paramNum = params == null ? 0 : params.length;
+        if (compact) {
+            Utils.writeVarInt(buf, paramNum);
+        } else {
+            buf.writeShort(paramNum);
+        }
+        boolean nativeTypes = this.nativeTypes && handshake.has(Handshake.cap_native_types);
+        for (int i = 0; i < paramNum; i++) {
+            Utils.writeValue(buf, params[i], serializer, compact, nativeTypes);
+        }
+    }
+
+    /**
+     * 缓存调用并设置超时
+     *
+     * @param id            前后端通信数据包唯一标识
+     * @param timeoutMillis 超时毫秒数，超时后以 {@link TimeoutException} 完成；当此值小于或等于0时，
+     *                      调用最多等待 rpc_invoke_expire_minutes 系统属性指定的分钟数（默认30）后取消，避免服务端未响应时调用永久滞留
+     * @return 异步结果
+     */
+    private CompletableFuture<Object> newRpcInvoke(final int id, final long timeoutMillis) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        boolean expire = timeoutMillis <= 0;
+        Timeout timeout = timer.newTimeout(t -> {
+            removeRpcInvoke(id);
+            if (expire) {
+                future.cancel(true);
+            } else {
+                future.completeExceptionally(new TimeoutException("请求超时"));
+            }
+        }, expire ? rpcInvokeExpireMillis : timeoutMillis, TimeUnit.MILLISECONDS);
+        this.cacheRpcInvoke(id, new RpcInvoke(future, timeout));
+        if (timeout.isExpired()) {
+            removeRpcInvoke(id); //登记前已超时
+        }
+        return future;
+    }
+
+    /**
+     * 调用的超时毫秒数，在服务端执行rpc调用期间发起的调用不超过 {@link RpcContext} 的剩余时间
+     *
+     * @param timeoutSeconds 超时秒数，小于或等于0表示不超时
+     * @return 超时毫秒数，0表示不超时，-1表示已超过上下文的截止时间
+     */
+    private static long timeoutMillis(int timeoutSeconds) {
+        long timeout = timeoutSeconds > 0 ? timeoutSeconds * 1000L : 0;
+        RpcContext context = RpcContext.current();
+        if (context == null) return timeout;
+        if (context.isExpired()) return -1;
+        long remaining = Math.max(1, context.getRemainingMillis());
+        return timeout > 0 && timeout < remaining ? timeout : remaining;
+    }
+
+    /**
+     * 等待返回的请求数量超出限制，或开启快速失败且发送缓冲超过高水位时拒绝发送
+     *
+     * @return 以 {@link RpcException#code_overloaded} 异常完成的异步结果，可发送时返回null
+     */
+    private CompletableFuture<Object> rejectIfOverloaded(ChannelHandlerContext ctx) {
+        int max = this.maxInFlight;
+        if (max > 0 && rpcInvokes.size() >= max) {
+            return CompletableFuture.failedFuture(new RpcException(RpcException.code_overloaded, "等待返回的请求数量超出限制：" + max));
+        }
+        if (failFastWhenUnwritable && !ctx.channel().isWritable()) {
+            return CompletableFuture.failedFuture(new RpcException(RpcException.code_overloaded, "发送缓冲已满"));
+        }
+        return null;
+    }
+
+    private static CompletableFuture<Object> deadlineExceeded() {
+        return CompletableFuture.failedFuture(new RpcException(RpcException.code_deadline_exceeded, "已超过调用方的截止时间"));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -478,27 +945,53 @@ abstract public class NettyClient implements IClient {
         if (ctx == null) {
             throw new ConnectException("Disconnect from the server");
         }
-        final String id = NanoId.randomNanoId();
-        Timeout timeout = null;
-        if (timeoutSeconds > 0) {
-            timer.newTimeout(t -> {
-                if (!t.isCancelled()) {
-                    RpcInvoke rpcInvoke = removeRpcInvoke(id);
-                    if (rpcInvoke != null) {
-                        CompletableFuture<?> future = rpcInvoke.getFuture();
-                        if (future != null) {
-                            future.completeExceptionally(new TimeoutException("请求超时"));
-                        }
-                    }
-                }
-            }, timeoutSeconds, TimeUnit.SECONDS);
+        CompletableFuture<Object> rejected = this.rejectIfOverloaded(ctx);
+        if (rejected != null) return rejected;
+        long timeoutMillis = timeoutMillis(timeoutSeconds);
+        if (timeoutMillis < 0) return deadlineExceeded();
+        final int id = this.nextRpcInvokeId();
+        CompletableFuture<Object> future = this.newRpcInvoke(id, timeoutMillis);
+        try {
+            this.remotingRequest(ctx, id, cmd, params, timeoutMillis);
+        } catch (RuntimeException e) {
+            failRpcInvoke(id, e);
+        }
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Object> execRemotingMethod0(final RpcMethod method, final int timeoutSeconds, final Object[] params) throws Exception {
+        ChannelHandlerContext ctx = this.getChannelHandlerContext();
+        if (ctx == null) {
+            throw new ConnectException("Disconnect from the server");
+        }
+        CompletableFuture<Object> rejected = this.rejectIfOverloaded(ctx);
+        if (rejected != null) return rejected;
+        long timeoutMillis = timeoutMillis(timeoutSeconds);
+        if (timeoutMillis < 0) return deadlineExceeded();
+        final int id = this.nextRpcInvokeId();
+        CompletableFuture<Object> future = this.newRpcInvoke(id, timeoutMillis);
+        try {
+            this.remotingRequest(ctx, id, method, params, timeoutMillis);
+        } catch (RuntimeException e) {
+            failRpcInvoke(id, e);
         }
-        CompletableFuture<Object> future = new CompletableFuture<>();
-        this.cacheRpcInvoke(id, new RpcInvoke(future, timeout));
-        this.remotingRequest(ctx, id, cmd, params);
         return future;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execRemotingMethod(final RpcMethod method, final int timeoutSeconds, final Object[] params) throws Exception {
+        CompletableFuture<Object> future = this.execRemotingMethod0(method, timeoutSeconds, params);
+        return (T) future.get(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -511,8 +1004,9 @@ abstract public class NettyClient implements IClient {
      * {@inheritDoc}
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T execRemotingLogic(final String cmd, final int timeoutSeconds, final Object[] params) throws Exception {
-        CompletableFuture<Object> future = this.execRemotingLogic0(cmd, params);
+        CompletableFuture<Object> future = this.execRemotingLogic0(cmd, timeoutSeconds, params);
         Object resultVal = future.get(timeoutSeconds, TimeUnit.SECONDS);
         if (resultVal instanceof RemoteException) {
             throw (RemoteException) resultVal;
@@ -3,6 +3,9 @@ package com.kaka.rpc.core;
 import ch.qos.logback.classic.Logger;
 import com.kaka.notice.Facade;
 import com.kaka.notice.FacadeFactory;
+import com.kaka.rpc.codec.ChunkCodec;
+import com.kaka.rpc.codec.CompressionCodec;
+import com.kaka.rpc.codec.FlushBatchHandler;
 import com.kaka.rpc.codec.LengthDataDecoder;
 import com.kaka.rpc.codec.LengthDataEncoder;
 import io.netty.bootstrap.ServerBootstrap;
@@ -15,6 +18,11 @@ import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -23,11 +31,79 @@ import java.util.concurrent.TimeUnit;
  * @author zkpursuit
  */
 public class NettyServer {
+
+    /**
+     * 业务处理执行方式
+     */
+    public enum ExecuteMode {
+        /**
+         * 由领域事件总线的线程池执行，见 {@link Facade#initThreadPool}
+         */
+        THREAD_POOL,
+        /**
+         * 每个请求一个虚拟线程，请求间不保证执行顺序，适用于阻塞调用数据库等外部服务的处理器
+         */
+        VIRTUAL_THREAD_PER_REQUEST,
+        /**
+         * 每个连接一个虚拟线程，同一连接的请求按到达顺序逐个执行
+         */
+        VIRTUAL_THREAD_PER_CONNECTION,
+        /**
+         * 按键有序，同一路由键（默认为连接绑定ID，见 {@link RoutingKey}）的请求按到达顺序逐个执行，
+         * 不同路由键的请求在与处理器核数相同的线程中并行执行 <br>
+         * 连接重新绑定ID前后的请求路由键不同，二者之间不保证顺序
+         */
+        KEYED
+    }
+
+    /**
+     * 数据包处理优先级，高优先级与低优先级的数据包各由独立的线程池执行，不与普通优先级的数据包排队 <br>
+     * 非普通优先级的数据包不参与 {@link ExecuteMode} 的执行顺序保证
+     */
+    public enum Priority {
+        /**
+         * 在IO线程中直接执行，仅适用于不阻塞且耗时极短的控制类数据包，如心跳；不受处理中请求数量限制
+         */
+        INLINE,
+        /**
+         * 由高优先级线程池执行，适用于登录等须及时响应的数据包；不受处理中请求数量限制
+         */
+        HIGH,
+        /**
+         * 按 {@link ExecuteMode} 执行
+         */
+        NORMAL,
+        /**
+         * 由低优先级线程池执行，适用于批处理等耗时较长的数据包，避免占满普通优先级的线程
+         */
+        LOW
+    }
+
     protected EventLoopGroup bossGroup;
     protected EventLoopGroup workerGroup;
     protected EventLoopGroup businessThreadGroup;
     private final Logger logger = (Logger) LoggerFactory.getLogger(NettyServer.class);
     static ProtocolPreHandler protocolPreHandler;
+    private ExecuteMode executeMode = ExecuteMode.THREAD_POOL;
+    private ExecutorService businessExecutor;
+    private KeyedExecutor keyedExecutor;
+    private RoutingKey routingKey;
+    private int compressThreshold = -1;
+    private int flushDelayMicros = -1;
+    private int flushMaxPendingBytes = 64 * 1024;
+    private final FlushBatchHandler.Stats flushStats = new FlushBatchHandler.Stats();
+    private int maxFrameLength = 2048;
+    private int maxMessageLength = 16 * 1024 * 1024;
+    private int maxInFlightPerConnection = 0;
+    private int maxInFlight = 0;
+    private InFlightLimiter inFlightLimiter;
+    private WriteBufferWaterMark writeBufferWaterMark;
+    private boolean pauseReadWhenUnwritable = true;
+    private final Map<Integer, Priority> opcodePriorities = new ConcurrentHashMap<>();
+    private final Map<String, Priority> commandPriorities = new ConcurrentHashMap<>();
+    private int highPriorityThreads = 2;
+    private int lowPriorityThreads = 2;
+    private PriorityRouter priorityRouter;
 
     /**
      * 构造方法
@@ -46,6 +122,151 @@ public class NettyServer {
         this(null);
     }
 
+    /**
+     * 设置业务处理执行方式，默认由领域事件总线的线程池执行，须在启动服务前设置 <br>
+     * 虚拟线程方式下处理器阻塞时不占用平台线程，但在synchronized块内阻塞仍会占用其承载线程
+     *
+     * @param executeMode 业务处理执行方式
+     */
+    public void setExecuteMode(ExecuteMode executeMode) {
+        this.executeMode = executeMode == null ? ExecuteMode.THREAD_POOL : executeMode;
+    }
+
+    /**
+     * 设置按键有序执行时的路由键提取器，须在启动服务前设置
+     *
+     * @param routingKey 路由键提取器，为null时以连接绑定ID为路由键
+     */
+    public void setRoutingKey(RoutingKey routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    /**
+     * 设置数据包压缩阈值，须在启动服务前设置 <br>
+     * 仅对握手时声明开启压缩的客户端压缩响应，达到阈值的数据包以Deflate压缩后发送
+     *
+     * @param compressThreshold 压缩阈值字节数，小于等于0表示不压缩
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 开启合并刷新，须在启动服务前设置 <br>
+     * 读取数据包期间的写出在本轮读取完成后一并刷新，其它写出最多推迟指定微秒后一并刷新，以减少系统调用次数
+     *
+     * @param maxDelayMicros  读取之外的刷新最多推迟的微秒数，为0时推迟至IO线程当前任务批次之后，小于0表示关闭合并刷新
+     * @param maxPendingBytes 待刷新字节数达到此值时立即刷新
+     */
+    public void setFlushBatching(int maxDelayMicros, int maxPendingBytes) {
+        this.flushDelayMicros = maxDelayMicros;
+        this.flushMaxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * 获取合并刷新统计，可据此查看平均每次刷新的写出次数
+     *
+     * @return 合并刷新统计
+     */
+    public FlushBatchHandler.Stats getFlushStats() {
+        return flushStats;
+    }
+
+    /**
+     * 设置单个数据包含长度头的最大字节数，默认2048，须在启动服务前设置 <br>
+     * 握手后按双方较小的上限分片发送
+     *
+     * @param maxFrameLength 单个数据包含长度头的最大字节数
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * 设置单个消息的最大字节数，即每个连接组装分片消息的内存预算，须在启动服务前设置 <br>
+     * 超过单个数据包上限的消息将拆分为多个分片发送
+     *
+     * @param maxMessageLength 单个消息的最大字节数
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * 设置处理中请求的最大数量，须在启动服务前设置 <br>
+     * 请求自IO线程分发至业务处理器执行完成（异步结果完成）前为处理中，超出限制的请求不执行，
+     * 在IO线程中直接以错误码 {@link RpcException#code_overloaded} 拒绝
+     *
+     * @param perConnection 每个连接处理中请求的最大数量，小于等于0表示不限制
+     * @param global        全部连接处理中请求的最大数量，小于等于0表示不限制
+     */
+    public void setMaxInFlight(int perConnection, int global) {
+        this.maxInFlightPerConnection = perConnection;
+        this.maxInFlight = global;
+    }
+
+    /**
+     * 设置连接发送缓冲的高低水位，须在启动服务前设置，未设置时使用Netty默认水位32KB/64KB <br>
+     * 读取背压开启时，待发送字节数超过高水位即暂停读取该连接的请求，降至低水位后恢复，见 {@link #setPauseReadWhenUnwritable(boolean)}
+     *
+     * @param low  低水位字节数
+     * @param high 高水位字节数
+     */
+    public void setWriteBufferWaterMark(int low, int high) {
+        this.writeBufferWaterMark = new WriteBufferWaterMark(low, high);
+    }
+
+    /**
+     * 设置连接发送缓冲超过高水位时是否暂停读取该连接的请求，默认true，须在启动服务前设置 <br>
+     * 为true时不读取响应的客户端最多使服务端积压高水位字节数的响应；
+     * 为false时不改变读取状态，响应排队不受限制，适用于应用自行控制自动读取的场景
+     *
+     * @param pause true表示暂停读取，false表示不限制排队
+     */
+    public void setPauseReadWhenUnwritable(boolean pause) {
+        this.pauseReadWhenUnwritable = pause;
+    }
+
+    /**
+     * 设置协议号的处理优先级，须在启动服务前设置
+     *
+     * @param opcode   协议号
+     * @param priority 优先级，为null时恢复普通优先级
+     */
+    public void setPriority(int opcode, Priority priority) {
+        if (priority == null || priority == Priority.NORMAL) {
+            opcodePriorities.remove(opcode);
+        } else {
+            opcodePriorities.put(opcode, priority);
+        }
+    }
+
+    /**
+     * 设置rpc调用领域事件的处理优先级，须在启动服务前设置 <br>
+     * 以方法ID调用的接口方法的优先级以 {@link com.kaka.rpc.RemotingPriority} 标注
+     *
+     * @param cmd      领域事件名
+     * @param priority 优先级，为null时恢复普通优先级
+     */
+    public void setPriority(String cmd, Priority priority) {
+        if (priority == null || priority == Priority.NORMAL) {
+            commandPriorities.remove(cmd);
+        } else {
+            commandPriorities.put(cmd, priority);
+        }
+    }
+
+    /**
+     * 设置高优先级与低优先级线程池的线程数，默认均为2，须在启动服务前设置
+     *
+     * @param high 高优先级线程数
+     * @param low  低优先级线程数
+     */
+    public void setPriorityThreads(int high, int low) {
+        this.highPriorityThreads = Math.max(1, high);
+        this.lowPriorityThreads = Math.max(1, low);
+    }
+
     /**
      * 启动服务
      *
@@ -57,12 +278,27 @@ public class NettyServer {
      * @param allIdleMilliseconds    读写超时时间，0表示不可用
      */
     public void start(InetSocketAddress address, int ioThreadPoolSize, int businessThreadPoolSize, int readerIdleMilliseconds, int writerIdleMilliseconds, int allIdleMilliseconds) {
+        Facade facade = FacadeFactory.getFacade();
+        if (!facade.hasCommand(RpcDispatchCommand.cmd)) {
+            facade.registerCommand(RpcDispatchCommand.cmd, RpcDispatchCommand.class);
+        }
         try {
             bossGroup = new NioEventLoopGroup(1);
             workerGroup = new NioEventLoopGroup(ioThreadPoolSize);
             if (businessThreadPoolSize > 0) {
                 businessThreadGroup = new NioEventLoopGroup(businessThreadPoolSize);
             }
+            if (executeMode == ExecuteMode.KEYED) {
+                int threads = Runtime.getRuntime().availableProcessors();
+                businessExecutor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("rpc-keyed-", 0).factory());
+                keyedExecutor = new KeyedExecutor(businessExecutor, threads * 16);
+            } else if (executeMode != ExecuteMode.THREAD_POOL) {
+                businessExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rpc-business-", 0).factory());
+            }
+            priorityRouter = new PriorityRouter(opcodePriorities, commandPriorities, highPriorityThreads, lowPriorityThreads);
+            if (maxInFlightPerConnection > 0 || maxInFlight > 0) {
+                inFlightLimiter = new InFlightLimiter(maxInFlightPerConnection, maxInFlight);
+            }
             ServerBootstrap bootstrap = new ServerBootstrap();
             //bootstrap.option(ChannelOption.SO_TIMEOUT, this);
             bootstrap.group(bossGroup, workerGroup)
@@ -76,6 +312,9 @@ public class NettyServer {
                     .option(ChannelOption.SO_SNDBUF, 1048576)
                     .option(ChannelOption.TCP_NODELAY, true)
                     .childOption(ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(64, 1024, 65536 * 1024));
+            if (writeBufferWaterMark != null) {
+                bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+            }
             ChannelFuture f = bootstrap.bind(address).sync();
             f.addListener(future -> {
                 if (f.isSuccess()) {
@@ -93,6 +332,19 @@ public class NettyServer {
             if (businessThreadGroup != null) {
                 businessThreadGroup.shutdownGracefully();
             }
+            shutdownExecutors();
+        }
+    }
+
+    /**
+     * 关闭业务处理与优先级线程池，已提交的任务继续执行
+     */
+    private void shutdownExecutors() {
+        if (businessExecutor != null) {
+            businessExecutor.shutdown();
+        }
+        if (priorityRouter != null) {
+            priorityRouter.shutdown();
         }
     }
 
@@ -100,8 +352,15 @@ public class NettyServer {
      * 初始化编解码器
      */
     protected void initCodec(ChannelPipeline pipeline) {
-        pipeline.addLast(new LengthDataDecoder(2048));
+        pipeline.addLast(new LengthDataDecoder(maxFrameLength));
         pipeline.addLast(new LengthDataEncoder());
+        pipeline.addLast(new ChunkCodec(maxFrameLength, maxMessageLength));
+        if (compressThreshold > 0) {
+            pipeline.addLast(new CompressionCodec(compressThreshold, maxMessageLength));
+        }
+        if (flushDelayMicros >= 0) {
+            pipeline.addLast(new FlushBatchHandler(flushDelayMicros, flushMaxPendingBytes, flushStats));
+        }
     }
 
     /**
@@ -124,7 +383,15 @@ public class NettyServer {
                     ch.pipeline().addLast(new IdleStateHandler(readerIdleTime, writerIdleTime, allIdleTime, TimeUnit.MILLISECONDS));
                 }
                 initCodec(ch.pipeline());
-                NettyServerHandler handler = new NettyServerHandler(this.hashCode());
+                Handshake handshake = Handshake.local(compressThreshold > 0, maxFrameLength, maxMessageLength, RpcInvokeHandler.serializer);
+                Executor executor = null;
+                if (executeMode == ExecuteMode.VIRTUAL_THREAD_PER_REQUEST) {
+                    executor = businessExecutor;
+                } else if (executeMode == ExecuteMode.VIRTUAL_THREAD_PER_CONNECTION) {
+                    executor = new SerialExecutor(businessExecutor);
+                }
+                NettyServerHandler handler = new NettyServerHandler(this.hashCode(), handshake, executor, keyedExecutor, routingKey, inFlightLimiter, priorityRouter,
+                        pauseReadWhenUnwritable);
                 if (businessThreadGroup == null) {
                     ch.pipeline().addLast(handler);
                 } else {
@@ -153,6 +420,7 @@ public class NettyServer {
                 businessThreadGroup.shutdownGracefully();
             }
         }
+        shutdownExecutors();
     }
 
 }
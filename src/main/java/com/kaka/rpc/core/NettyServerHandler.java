@@ -4,13 +4,19 @@ import com.kaka.notice.Facade;
 import com.kaka.notice.FacadeFactory;
 import com.kaka.notice.Message;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.timeout.IdleStateEvent;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * 服务端通信处理器以及连接状态处理
+ * 服务端通信处理器以及连接状态处理 <br>
+ * 限制处理中请求数量时，超出限制的请求在IO线程中直接拒绝：rpc调用以 {@link RpcException#code_overloaded} 异常响应，
+ * 其它协议以错误码数据包响应；设置了发送缓冲高低水位时，超过高水位暂停读取该连接，降至低水位后恢复 <br>
+ * 数据包按 {@link NettyServer.Priority} 分发，内联与高优先级的数据包不受处理中请求数量限制
  *
  * @author zkpursuit
  */
@@ -18,21 +24,147 @@ class NettyServerHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
     protected final Facade facade = FacadeFactory.getFacade();
     public final long serverId;
+    private final Handshake handshake; //本端握手参数
+    private final Executor executor; //业务执行器，与按键有序执行器均为null时由领域事件总线的线程池执行
+    private final KeyedExecutor keyedExecutor; //按键有序执行器
+    private final RoutingKey routingKey;
+    private final InFlightLimiter limiter; //处理中请求数量限制，为null时不限制
+    private final AtomicInteger inFlight = new AtomicInteger(); //本连接处理中请求数量
+    private final PriorityRouter priorityRouter; //优先级分发，为null时均为普通优先级
+    private final boolean pauseReadWhenUnwritable; //发送缓冲超过高水位时是否暂停读取
 
     public NettyServerHandler(long serverId) {
+        this(serverId, Handshake.local(false, 2048, 16 * 1024 * 1024, RpcInvokeHandler.serializer), null, null, null, null, null, false);
+    }
+
+    NettyServerHandler(long serverId, Handshake handshake, Executor executor, KeyedExecutor keyedExecutor, RoutingKey routingKey, InFlightLimiter limiter,
+                       PriorityRouter priorityRouter, boolean pauseReadWhenUnwritable) {
         this.serverId = serverId;
+        this.handshake = handshake;
+        this.executor = executor;
+        this.keyedExecutor = keyedExecutor;
+        this.routingKey = routingKey;
+        this.limiter = limiter;
+        this.priorityRouter = priorityRouter;
+        this.pauseReadWhenUnwritable = pauseReadWhenUnwritable;
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
         int opcode = msg.readInt();
+        if (opcode == RpcOpCode.handshake) {
+            handshake(ctx, msg);
+            return;
+        }
+        if (opcode == RpcInvokeHandler.opcode) {
+            RpcInvokeHandler.defineCommand(ctx, msg);
+        }
         if (NettyServer.protocolPreHandler != null) {
+            int bodyIndex = msg.readerIndex();
             boolean retVal = NettyServer.protocolPreHandler.handler(opcode, msg, ctx);
             if (!retVal) {
+                if (opcode == RpcInvokeHandler.opcode) {
+                    msg.readerIndex(bodyIndex);
+                    RpcInvokeHandler.reject(ctx, msg, RpcInvokeHandler.rejected(opcode)); //rpc调用总是响应
+                }
                 return;
             }
         }
-        facade.sendMessage(new RpcMessage(opcode, Unpooled.copiedBuffer(msg), ctx), Message.ExecuteType.ASYN_THREAD);
+        NettyServer.Priority priority = priorityRouter != null ? priorityRouter.of(ctx, opcode, msg) : NettyServer.Priority.NORMAL;
+        boolean limited = limiter != null && priority.compareTo(NettyServer.Priority.NORMAL) >= 0;
+        if (limited && !limiter.tryAcquire(inFlight)) {
+            reject(ctx, opcode, msg);
+            return;
+        }
+        //以保留引用的切片代替复制，分发后释放
+        RpcMessage message = new RpcMessage(opcode, msg.retainedSlice(), ctx);
+        message.releaseBody = true;
+        if (opcode == RpcInvokeHandler.opcode) {
+            message.receivedNanos = System.nanoTime();
+        }
+        if (limited) {
+            message.limiter = limiter;
+            message.connectionInFlight = inFlight;
+        }
+        if (priority == NettyServer.Priority.INLINE) {
+            dispatch(message);
+            return;
+        }
+        try {
+            if (priority != NettyServer.Priority.NORMAL) {
+                priorityRouter.executor(priority).execute(() -> dispatch(message));
+            } else if (keyedExecutor != null) {
+                keyedExecutor.execute(routingKeyOf(opcode, msg, ctx), () -> dispatch(message));
+            } else if (executor != null) {
+                executor.execute(() -> dispatch(message));
+            } else {
+                facade.sendMessage(new Message(RpcDispatchCommand.cmd, message), Message.ExecuteType.ASYN_THREAD);
+            }
+        } catch (Throwable e) {
+            message.release();
+            throw e;
+        }
+    }
+
+    private void dispatch(RpcMessage message) {
+        try {
+            facade.sendMessage(message);
+        } finally {
+            message.release(); //处理器未继承RpcMessageHandler时亦释放
+        }
+    }
+
+    /**
+     * 拒绝超出处理中数量限制的请求
+     *
+     * @param ctx    连接
+     * @param opcode 操作码
+     * @param msg    已读取操作码的数据包
+     */
+    private void reject(ChannelHandlerContext ctx, int opcode, ByteBuf msg) {
+        String info = "服务端繁忙，处理中请求数量超出限制";
+        if (opcode == RpcInvokeHandler.opcode) {
+            RpcInvokeHandler.reject(ctx, msg, new RpcException(RpcException.code_overloaded, info));
+            return;
+        }
+        ByteBuf buf = ctx.alloc().buffer(17 + ByteBufUtil.utf8MaxBytes(info));
+        buf.writeInt(RpcOpCode.err_code);
+        buf.writeInt(opcode);
+        buf.writeByte(1);
+        buf.writeInt(RpcException.code_overloaded);
+        Utils.writeString(buf, info, false);
+        ctx.writeAndFlush(buf);
+    }
+
+    /**
+     * 开启读取背压时，发送缓冲超过高水位暂停读取，降至低水位后恢复，避免不读取响应的客户端使服务端积压响应；
+     * 关闭时不改变读取状态，以免与应用自行控制的自动读取冲突
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (pauseReadWhenUnwritable) {
+            ctx.channel().config().setAutoRead(ctx.channel().isWritable());
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    private Object routingKeyOf(int opcode, ByteBuf msg, ChannelHandlerContext ctx) {
+        Object key = routingKey != null ? routingKey.keyOf(opcode, msg, ctx) : null;
+        if (key == null) key = NettyCtxManager.getBindId(ctx);
+        return key != null ? key : ctx.channel();
+    }
+
+    /**
+     * 登记客户端握手的协商结果并以本端握手参数应答，应答写出后才启用压缩等特性
+     *
+     * @param ctx 连接
+     * @param msg 握手数据包，不含握手操作码
+     */
+    private void handshake(ChannelHandlerContext ctx, ByteBuf msg) {
+        Handshake agreed = handshake.agree(Handshake.decode(msg));
+        ctx.writeAndFlush(handshake.encode(ctx.alloc())).addListener(f -> {
+            if (f.isSuccess()) Handshake.apply(ctx.channel(), agreed);
+        });
     }
 
     @Override
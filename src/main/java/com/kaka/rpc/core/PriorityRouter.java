@@ -0,0 +1,158 @@
+package com.kaka.rpc.core;
+
+import com.kaka.notice.Facade;
+import com.kaka.notice.FacadeFactory;
+import com.kaka.notice.Proxy;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 按优先级分发数据包，在IO线程中查看数据包确定优先级，不改变读索引 <br>
+ * 优先级依次取自：协议号的设置；rpc调用中领域事件名的设置；以方法ID调用的接口方法上的 {@link com.kaka.rpc.RemotingPriority} 标注
+ * （旧版本结构的请求以事件名中的方法ID与接口ID查找），
+ * 方法表中尚无该接口时经接口实现类登记接口全部方法，首次调用即按标注的优先级分发 <br>
+ * 高优先级与低优先级线程池在首次分发对应优先级的数据包时才创建
+ *
+ * @author zkpursuit
+ */
+final class PriorityRouter {
+
+    private final Facade facade = FacadeFactory.getFacade();
+    private final Map<Integer, NettyServer.Priority> opcodes;
+    private final Map<String, NettyServer.Priority> commands;
+    private final int highThreads;
+    private final int lowThreads;
+    private volatile ExecutorService high;
+    private volatile ExecutorService low;
+    private boolean shutdown; //由this同步
+
+    /**
+     * 构造方法
+     *
+     * @param opcodes     协议号的优先级
+     * @param commands    领域事件名的优先级
+     * @param highThreads 高优先级线程数
+     * @param lowThreads  低优先级线程数
+     */
+    PriorityRouter(Map<Integer, NettyServer.Priority> opcodes, Map<String, NettyServer.Priority> commands, int highThreads, int lowThreads) {
+        this.opcodes = opcodes;
+        this.commands = commands;
+        this.highThreads = highThreads;
+        this.lowThreads = lowThreads;
+    }
+
+    /**
+     * 获取数据包的优先级
+     *
+     * @param ctx    连接
+     * @param opcode 操作码
+     * @param msg    已读取操作码的数据包
+     * @return 优先级
+     */
+    NettyServer.Priority of(ChannelHandlerContext ctx, int opcode, ByteBuf msg) {
+        NettyServer.Priority priority = opcodes.get(opcode);
+        if (priority == null && opcode == RpcInvokeHandler.opcode) {
+            priority = ofInvoke(ctx, msg);
+        }
+        return priority == null ? NettyServer.Priority.NORMAL : priority;
+    }
+
+    /**
+     * 获取优先级对应的执行器
+     *
+     * @param priority {@link NettyServer.Priority#HIGH} 或 {@link NettyServer.Priority#LOW}
+     * @return 执行器
+     */
+    Executor executor(NettyServer.Priority priority) {
+        boolean isHigh = priority == NettyServer.Priority.HIGH;
+        ExecutorService executor = isHigh ? high : low;
+        return executor != null ? executor : create(isHigh);
+    }
+
+    private synchronized ExecutorService create(boolean isHigh) {
+        ExecutorService executor = isHigh ? high : low;
+        if (executor != null) return executor;
+        executor = Executors.newFixedThreadPool(isHigh ? highThreads : lowThreads, Thread.ofPlatform().name(isHigh ? "rpc-high-" : "rpc-low-", 0).factory());
+        if (shutdown) executor.shutdown(); //停止后不再接受任务，亦不创建线程
+        if (isHigh) {
+            high = executor;
+        } else {
+            low = executor;
+        }
+        return executor;
+    }
+
+    /**
+     * 关闭已创建的线程池，已提交的任务继续执行
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        if (high != null) high.shutdown();
+        if (low != null) low.shutdown();
+    }
+
+    private NettyServer.Priority ofInvoke(ChannelHandlerContext ctx, ByteBuf msg) {
+        if (RpcInvokeHandler.isLegacy(msg)) return ofLegacyInvoke(msg);
+        int index = msg.readerIndex();
+        if (msg.readableBytes() < 6) return null;
+        byte callType = msg.getByte(index + 5);
+        if (callType == RpcInvokeHandler.call_method_id) {
+            if (msg.readableBytes() < 22) return null;
+            RemotingMethodTable.Entry entry = entryOf(msg.getLong(index + 6), msg.getLong(index + 14));
+            return entry != null ? entry.priority : null;
+        }
+        if (commands.isEmpty()) return null;
+        String cmd;
+        msg.readerIndex(index + 6);
+        try {
+            if (callType == RpcInvokeHandler.call_event_index) {
+                cmd = CommandTable.of(ctx.channel()).get(Utils.readVarInt(msg));
+            } else if (callType == RpcInvokeHandler.call_event_define) {
+                Utils.readVarInt(msg);
+                cmd = Utils.readShortString(msg);
+            } else if (callType == RpcInvokeHandler.call_event) {
+                cmd = Utils.readShortString(msg);
+            } else {
+                return null;
+            }
+        } finally {
+            msg.readerIndex(index);
+        }
+        return cmd != null ? commands.get(cmd) : null;
+    }
+
+    /**
+     * 旧版本结构的请求以事件名确定优先级，rpc:接口完全限定名:接口方法名:方法ID:接口ID 形式的接口方法调用以方法上的标注确定
+     */
+    private NettyServer.Priority ofLegacyInvoke(ByteBuf msg) {
+        String cmd = RpcInvokeHandler.legacyCommand(msg);
+        if (cmd == null) return null;
+        if (!cmd.startsWith("rpc:")) return commands.get(cmd);
+        String[] parts = cmd.substring("rpc:".length()).split(":");
+        if (parts.length < 4) return null;
+        try {
+            Long methodId = RpcInvokeHandler.parseId(parts[2]);
+            Long interfaceId = RpcInvokeHandler.parseId(parts[3]);
+            if (methodId == null || interfaceId == null) return null;
+            RemotingMethodTable.Entry entry = entryOf(interfaceId, methodId);
+            return entry != null ? entry.priority : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 获取接口方法，方法表中不存在时由接口实现类登记，与 {@link RpcInvokeHandler} 执行调用时的查找一致
+     */
+    private RemotingMethodTable.Entry entryOf(long interfaceId, long methodId) {
+        RemotingMethodTable.Entry entry = RemotingMethodTable.get(interfaceId, methodId);
+        if (entry != null) return entry;
+        Proxy proxy = facade.retrieveProxy(String.valueOf(interfaceId));
+        return proxy != null ? RemotingMethodTable.resolve(proxy, interfaceId, methodId) : null;
+    }
+}
@@ -0,0 +1,204 @@
+package com.kaka.rpc.core;
+
+import com.kaka.rpc.RemotingStackTrace;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 结构化异常编解码 <br>
+ * 结构：短字符串异常类名+int错误码+byte是否有错误信息[+字符串错误信息]+byte是否有堆栈[+字符串堆栈] <br>
+ * 服务端缓存最近编码的异常，重复的相同异常直接复制已编码字节；客户端缓存异常类的构造器，以远端异常类型重建异常
+ *
+ * @author zkpursuit
+ */
+final class RemoteErrors {
+
+    /**
+     * 已编码的异常，不含堆栈部分
+     */
+    private static final class Encoded {
+        final Class<?> type;
+        final String message;
+        final int code;
+        final byte[] bytes;
+
+        Encoded(Class<?> type, String message, int code, byte[] bytes) {
+            this.type = type;
+            this.message = message;
+            this.code = code;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 异常构造工厂
+     */
+    private interface Factory {
+        Throwable create(int code, String message) throws Exception;
+    }
+
+    private static final Encoded[] encoded_cache = new Encoded[256];
+    private static final int encoded_cache_mask = encoded_cache.length - 1;
+    private static final int encoded_cache_max_bytes = 1024;
+    private static final Map<String, Factory> factories = new ConcurrentHashMap<>(); //异常类名->异常构造工厂
+    private static final Map<Method, Boolean> stack_trace_methods = new ConcurrentHashMap<>(); //执行方法->是否返回异常堆栈
+
+    private RemoteErrors() {
+    }
+
+    /**
+     * 执行方法是否须返回异常堆栈 <br>
+     * 按名称解析的调用传入的是实现类方法，故同时查找其实现的接口中同签名的方法及接口上的标注
+     *
+     * @param method 执行的方法，可为null
+     * @return true表示返回异常堆栈
+     */
+    static boolean isStackTraceEnabled(Method method) {
+        if (RpcInvokeHandler.sendStackTrace) return true;
+        return method != null && stack_trace_methods.computeIfAbsent(method, RemoteErrors::isAnnotated);
+    }
+
+    private static boolean isAnnotated(Method method) {
+        for (Class<?> clazz = method.getDeclaringClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            if (isAnnotated(clazz, method)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isAnnotated(Class<?> clazz, Method method) {
+        try {
+            Method declared = clazz == method.getDeclaringClass() ? method : clazz.getDeclaredMethod(method.getName(), method.getParameterTypes());
+            if (declared.isAnnotationPresent(RemotingStackTrace.class) || clazz.isAnnotationPresent(RemotingStackTrace.class)) {
+                return true;
+            }
+        } catch (NoSuchMethodException e) {
+            //此类型未声明该方法
+        }
+        for (Class<?> face : clazz.getInterfaces()) {
+            if (isAnnotated(face, method)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 写入结构化异常，不含返回类型
+     *
+     * @param buf        字节缓冲区
+     * @param ex         异常，反射调用产生的InvocationTargetException将写入其目标异常
+     * @param stackTrace 是否写入异常堆栈
+     */
+    static void write(ByteBuf buf, Throwable ex, boolean stackTrace) {
+        while (ex instanceof InvocationTargetException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        Class<?> type = ex.getClass();
+        String message = ex.getMessage();
+        int code = ex instanceof RpcException rpcEx ? rpcEx.getCode() : 0;
+        int hash = type.hashCode() * 31 + Objects.hashCode(message) * 17 + code;
+        int slot = (hash ^ (hash >>> 16)) & encoded_cache_mask;
+        Encoded cached = encoded_cache[slot];
+        if (cached != null && cached.type == type && cached.code == code && Objects.equals(cached.message, message)) {
+            buf.writeBytes(cached.bytes);
+        } else {
+            int start = buf.writerIndex();
+            Utils.writeShortString(buf, type.getName());
+            buf.writeInt(code);
+            writeNullableString(buf, message);
+            int length = buf.writerIndex() - start;
+            if (length <= encoded_cache_max_bytes) {
+                encoded_cache[slot] = new Encoded(type, message, code, ByteBufUtil.getBytes(buf, start, length));
+            }
+        }
+        writeNullableString(buf, stackTrace ? stackTraceOf(ex) : null);
+    }
+
+    /**
+     * 读取结构化异常并以远端异常类型重建 <br>
+     * 无法加载、非Throwable子类或无可用构造器的异常类以 {@link RpcException} 表示，远端堆栈作为异常的cause
+     *
+     * @param buf 字节缓冲区
+     * @return 重建的异常
+     */
+    static Throwable read(ByteBuf buf) {
+        String className = Utils.readShortString(buf);
+        int code = buf.readInt();
+        String message = readNullableString(buf);
+        String stackTrace = readNullableString(buf);
+        Throwable ex;
+        try {
+            ex = factories.computeIfAbsent(className, RemoteErrors::factoryOf).create(code, message);
+        } catch (Exception e) {
+            ex = new RpcException(className, code, message);
+        }
+        if (stackTrace != null) {
+            RemoteException remote = new RemoteException(stackTrace);
+            try {
+                ex.initCause(remote);
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                ex.addSuppressed(remote);
+            }
+        }
+        return ex;
+    }
+
+    private static Factory factoryOf(String className) {
+        Factory fallback = (code, message) -> new RpcException(className, code, message);
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Class<?> clazz = Class.forName(className, false, loader != null ? loader : RemoteErrors.class.getClassLoader());
+            if (!Throwable.class.isAssignableFrom(clazz) || Modifier.isAbstract(clazz.getModifiers())) return fallback;
+            if (RpcException.class.isAssignableFrom(clazz)) {
+                Constructor<?> constructor = findConstructor(clazz, int.class, String.class);
+                if (constructor != null) return (code, message) -> (Throwable) constructor.newInstance(code, message);
+            }
+            Constructor<?> constructor = findConstructor(clazz, String.class);
+            if (constructor != null) return (code, message) -> (Throwable) constructor.newInstance(message);
+            Constructor<?> noArgs = findConstructor(clazz);
+            if (noArgs != null) return (code, message) -> message == null ? (Throwable) noArgs.newInstance() : fallback.create(code, message);
+        } catch (ClassNotFoundException | LinkageError e) {
+            //客户端不存在此异常类
+        }
+        return fallback;
+    }
+
+    private static Constructor<?> findConstructor(Class<?> clazz, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = clazz.getConstructor(parameterTypes);
+            return Modifier.isPublic(clazz.getModifiers()) ? constructor : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static String stackTraceOf(Throwable ex) {
+        StringWriter writer = new StringWriter(1024);
+        try (PrintWriter pw = new PrintWriter(writer)) {
+            ex.printStackTrace(pw);
+        }
+        return writer.toString();
+    }
+
+    private static void writeNullableString(ByteBuf buf, String str) {
+        if (str == null) {
+            buf.writeBoolean(false);
+        } else {
+            buf.writeBoolean(true);
+            Utils.writeString(buf, str, false);
+        }
+    }
+
+    private static String readNullableString(ByteBuf buf) {
+        return buf.readBoolean() ? Utils.readString(buf, false) : null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.kaka.rpc.core;
+
+import com.kaka.notice.Proxy;
+import com.kaka.rpc.RemotingPriority;
+import com.kaka.rpc.codec.NativeTypeRegistry;
+import com.kaka.util.StringUtils;
+import io.netty.util.collection.LongObjectHashMap;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+/**
+ * 服务端RPC方法表，以接口唯一标识及方法唯一标识映射接口方法 <br>
+ * 继承的方法以声明该方法的父接口计算方法唯一标识，多个接口继承同一父接口时方法唯一标识相同，须以接口唯一标识区分 <br>
+ * 读多写少，写入时复制整张表后替换，读取时无锁 <br>
+ * 注册接口时为每个方法创建一次执行器 {@link MethodInvoker}，接口服务注册时即登记（见 {@link RpcInvokeHandler#registerInterface(Class)}）
+ *
+ * @author zkpursuit
+ */
+final class RemotingMethodTable {
+
+    /**
+     * 服务端接口方法
+     */
+    static final class Entry {
+        final Class<?> interfaceClass;
+        final long interfaceId;
+        final Method method;
+        final String proxyName; //接口实现类在领域事件总线中的注册名
+        final String name; //rpc:接口完全限定名:接口方法名
+        final SizePredictor responseSize = new SizePredictor(64); //响应大小预测器
+        final MethodInvoker invoker;
+        final NettyServer.Priority priority; //方法或接口上标注的优先级，未标注时为null
+
+        Entry(Class<?> interfaceClass, long interfaceId, Method method) {
+            this.interfaceClass = interfaceClass;
+            this.interfaceId = interfaceId;
+            this.method = method;
+            this.proxyName = String.valueOf(interfaceId);
+            this.name = "rpc:" + interfaceClass.getName() + ":" + method.getName();
+            this.invoker = new MethodInvoker(method);
+            RemotingPriority annotation = method.getAnnotation(RemotingPriority.class);
+            if (annotation == null) annotation = interfaceClass.getAnnotation(RemotingPriority.class);
+            if (annotation == null) annotation = method.getDeclaringClass().getAnnotation(RemotingPriority.class);
+            this.priority = annotation != null ? annotation.value() : null;
+        }
+    }
+
+    private static volatile LongObjectHashMap<LongObjectHashMap<Entry>> methods = new LongObjectHashMap<>(); //接口ID->方法ID->接口方法
+    private static volatile LongObjectHashMap<Class<?>> interfaces = new LongObjectHashMap<>();
+
+    private RemotingMethodTable() {
+    }
+
+    /**
+     * 根据接口唯一标识及方法唯一标识获取接口方法
+     *
+     * @param interfaceId 接口唯一标识
+     * @param methodId    方法唯一标识
+     * @return 接口方法，未注册时返回null
+     */
+    static Entry get(long interfaceId, long methodId) {
+        LongObjectHashMap<Entry> interfaceMethods = methods.get(interfaceId);
+        return interfaceMethods != null ? interfaceMethods.get(methodId) : null;
+    }
+
+    /**
+     * 根据接口唯一标识及方法唯一标识获取接口方法，方法表中不存在时由接口实现类查找接口并注册
+     *
+     * @param proxy       接口实现类
+     * @param interfaceId 接口唯一标识
+     * @param methodId    方法唯一标识
+     * @return 接口方法，无法匹配时返回null
+     */
+    static Entry resolve(Proxy proxy, long interfaceId, long methodId) {
+        Entry entry = get(interfaceId, methodId);
+        if (entry != null) return entry;
+        Class<?> interfaceClass = interfaces.get(interfaceId);
+        if (interfaceClass == null) {
+            interfaceClass = findInterface(proxy.getClass(), interfaceId);
+            if (interfaceClass == null) return null;
+        }
+        register(interfaceClass, interfaceId);
+        return get(interfaceId, methodId);
+    }
+
+    /**
+     * 注册接口所有方法
+     *
+     * @param interfaceClass 接口类
+     * @param interfaceId    接口唯一标识
+     */
+    static synchronized void register(Class<?> interfaceClass, long interfaceId) {
+        if (interfaces.containsKey(interfaceId)) return;
+        NativeTypeRegistry.registerInterface(interfaceClass);
+        LongObjectHashMap<Entry> interfaceMethods = new LongObjectHashMap<>();
+        for (Map.Entry<Long, Method> e : Utils.getAllMethods(interfaceClass).entrySet()) {
+            interfaceMethods.put(e.getKey(), new Entry(interfaceClass, interfaceId, e.getValue()));
+        }
+        LongObjectHashMap<LongObjectHashMap<Entry>> newMethods = new LongObjectHashMap<>(methods.size() + 4);
+        newMethods.putAll(methods);
+        newMethods.put(interfaceId, interfaceMethods);
+        LongObjectHashMap<Class<?>> newInterfaces = new LongObjectHashMap<>(interfaces.size() + 4);
+        newInterfaces.putAll(interfaces);
+        newInterfaces.put(interfaceId, interfaceClass);
+        methods = newMethods;
+        interfaces = newInterfaces;
+    }
+
+    private static Class<?> findInterface(Class<?> clazz, long interfaceId) {
+        for (Class<?> cls = clazz; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            for (Class<?> itf : cls.getInterfaces()) {
+                if (StringUtils.toNumber(itf.getName()) == interfaceId) return itf;
+                Class<?> parent = findInterface(itf, interfaceId);
+                if (parent != null) return parent;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.kaka.rpc.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * 按键有序执行时的路由键提取器，路由键相同的数据包按到达顺序逐个执行 <br>
+ *
+ * @author zkpursuit
+ * @see NettyServer.ExecuteMode#KEYED
+ */
+public interface RoutingKey {
+
+    /**
+     * 提取数据包的路由键，如玩家ID
+     *
+     * @param opcode 通信协议号
+     * @param msg    通信数据包剩下的字节数据，仅可以绝对索引读取，不得改变读索引
+     * @param ctx    通信信道
+     * @return 路由键，为null时以连接绑定ID为路由键
+     */
+    Object keyOf(int opcode, ByteBuf msg, ChannelHandlerContext ctx);
+
+}
@@ -0,0 +1,102 @@
+package com.kaka.rpc.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端执行rpc调用时的上下文，当前仅包含调用方传递的截止时间 <br>
+ * 执行期间绑定于执行线程，其中发起的rpc调用继承剩余时间作为超时时间，截止时间随请求继续传递；
+ * 须在其它线程中继续使用时以 {@link #wrap(Runnable)} 包装任务，如异步结果的后续处理
+ *
+ * @author zkpursuit
+ */
+public final class RpcContext {
+
+    private static final ThreadLocal<RpcContext> current = new ThreadLocal<>();
+
+    private final long deadlineNanos; //以System.nanoTime()计的截止时间
+
+    RpcContext(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 获取当前线程的上下文
+     *
+     * @return 上下文，调用方未传递截止时间或不在rpc调用执行期间时返回null
+     */
+    public static RpcContext current() {
+        return current.get();
+    }
+
+    /**
+     * 获取当前线程上下文的剩余毫秒数
+     *
+     * @return 剩余毫秒数，已超时为0，无上下文时返回-1
+     */
+    public static long remainingMillis() {
+        RpcContext context = current.get();
+        return context == null ? -1 : context.getRemainingMillis();
+    }
+
+    /**
+     * 包装任务，使任务在其它线程中执行时绑定当前线程的上下文
+     *
+     * @param task 任务
+     * @return 绑定上下文的任务，无上下文时返回原任务
+     */
+    public static Runnable wrap(Runnable task) {
+        RpcContext context = current.get();
+        if (context == null) return task;
+        return () -> {
+            RpcContext prev = enter(context);
+            try {
+                task.run();
+            } finally {
+                exit(prev);
+            }
+        };
+    }
+
+    /**
+     * 绑定上下文到当前线程
+     *
+     * @param context 上下文
+     * @return 之前绑定的上下文，用于 {@link #exit(RpcContext)} 恢复
+     */
+    static RpcContext enter(RpcContext context) {
+        RpcContext prev = current.get();
+        current.set(context);
+        return prev;
+    }
+
+    /**
+     * 恢复当前线程之前绑定的上下文
+     *
+     * @param prev {@link #enter(RpcContext)} 返回的上下文
+     */
+    static void exit(RpcContext prev) {
+        if (prev == null) {
+            current.remove();
+        } else {
+            current.set(prev);
+        }
+    }
+
+    /**
+     * 获取剩余毫秒数
+     *
+     * @return 剩余毫秒数，已超时为0
+     */
+    public long getRemainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * 是否已超过截止时间
+     *
+     * @return true表示已超时，调用方已不再等待结果
+     */
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+}
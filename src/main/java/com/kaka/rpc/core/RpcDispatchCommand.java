@@ -0,0 +1,30 @@
+package com.kaka.rpc.core;
+
+import com.kaka.notice.Command;
+import com.kaka.notice.Message;
+
+/**
+ * 领域事件总线线程池中分发数据包的处理器 <br>
+ * 由 {@link NettyServerHandler} 以事件体携带 {@link RpcMessage} 异步发出，在总线线程中同步分发后总是释放数据包，
+ * 处理器未继承 {@link RpcMessageHandler} 或事件对象被总线重置时亦不泄漏
+ *
+ * @author zkpursuit
+ */
+public class RpcDispatchCommand extends Command {
+
+    /**
+     * 分发处理器的领域事件名
+     */
+    public static final String cmd = "rpc_dispatch";
+
+    @Override
+    public void execute(Message message) {
+        if (message.getBody() instanceof RpcMessage rpcMessage) {
+            try {
+                this.getFacade().sendMessage(rpcMessage);
+            } finally {
+                rpcMessage.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.kaka.rpc.core;
+
+/**
+ * 携带错误码的RPC异常 <br>
+ * 服务端抛出此异常时错误码随结构化异常一同返回至客户端，客户端无法还原远端异常类型时亦以此异常表示
+ *
+ * @author zkpursuit
+ */
+public class RpcException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 错误码：服务端处理中请求数量超出限制或客户端发送缓冲已满，请求未被执行，可稍后重试
+     */
+    public static final int code_overloaded = 503;
+
+    /**
+     * 错误码：请求被协议前置处理器拒绝，请求未被执行
+     */
+    public static final int code_rejected = 403;
+
+    /**
+     * 错误码：已超过调用方的截止时间，请求未被执行
+     */
+    public static final int code_deadline_exceeded = 504;
+
+    private final int code;
+    private final String remoteClassName;
+
+    /**
+     * 构造方法
+     *
+     * @param code    错误码
+     * @param message 错误信息
+     */
+    public RpcException(int code, String message) {
+        super(message);
+        this.code = code;
+        this.remoteClassName = null;
+    }
+
+    /**
+     * 构造方法，用于表示客户端无法还原类型的远端异常
+     *
+     * @param remoteClassName 远端异常类名
+     * @param code            错误码
+     * @param message         错误信息
+     */
+    RpcException(String remoteClassName, int code, String message) {
+        super(message);
+        this.code = code;
+        this.remoteClassName = remoteClassName;
+    }
+
+    /**
+     * 获取错误码
+     *
+     * @return 错误码
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * 获取远端异常类名
+     *
+     * @return 远端异常类名，异常类型已在客户端还原时为null
+     */
+    public String getRemoteClassName() {
+        return remoteClassName;
+    }
+
+    @Override
+    public String toString() {
+        if (remoteClassName == null) return super.toString();
+        String message = getLocalizedMessage();
+        return message != null ? remoteClassName + ": " + message : remoteClassName;
+    }
+}
@@ -4,124 +4,468 @@ import com.kaka.notice.Facade;
 import com.kaka.notice.IResult;
 import com.kaka.notice.Proxy;
 import com.kaka.notice.SyncResult;
-import com.kaka.util.JdkSerializer;
+import com.kaka.rpc.codec.JdkStreamSerializer;
 import com.kaka.util.Serializer;
+import com.kaka.util.StringUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * RPC相关的领域事件处理
+ * RPC相关的领域事件处理 <br>
+ * 接口方法或领域事件处理器返回 {@link CompletionStage} 时不占用业务线程等待，结果完成时再写出响应 <br>
+ * 请求携带截止时间时，于解码参数前及执行前检查，已超时的请求不再执行，以 {@link RpcException#code_deadline_exceeded} 异常响应；
+ * 执行期间截止时间经 {@link RpcContext} 绑定于执行线程 <br>
+ * 新版本的请求与返回数据包总是设置 {@link #flag_binary}，未设置时按旧版本数据包结构解析请求并以旧版本结构返回结果，
+ * 逐个数据包判断，未握手的旧版本客户端及握手完成前的新版本客户端均可调用
  *
  * @author zkpursuit
  */
 public class RpcInvokeHandler extends RpcMessageHandler {
 
-    public static Serializer<Object> serializer = new JdkSerializer();
+    public static Serializer<Object> serializer = new JdkStreamSerializer();
+    /**
+     * 是否对全部方法返回异常堆栈，为false时仅返回标注 {@link com.kaka.rpc.RemotingStackTrace} 的接口或方法的异常堆栈
+     */
+    public static boolean sendStackTrace = false;
     static int opcode = Integer.parseInt(RpcOpCode.cs_rpc);
-    private final static Map<Long, Class<?>> interfaceClassMap = new ConcurrentHashMap<>(); //类名转换后的ID->类
-    private final static Map<Class<?>, Map<Long, Method>> interfaceMethodMap = new ConcurrentHashMap<>(); //类->(方法完全限定名转后后的ID->方法)
+    /**
+     * 调用类型：领域事件，其后为短字符串事件名
+     */
+    static final byte call_event = 0;
+    /**
+     * 调用类型：以ID调用rpc接口方法，其后为long接口ID+long方法ID
+     */
+    static final byte call_method_id = 1;
+    /**
+     * 调用类型：以名称调用rpc接口方法，其后为短字符串接口名+短字符串方法名
+     */
+    static final byte call_method_name = 2;
+    /**
+     * 调用类型：定义领域事件索引并调用领域事件，其后为变长int索引+短字符串事件名
+     */
+    static final byte call_event_define = 3;
+    /**
+     * 调用类型：以索引调用已定义的领域事件，其后为变长int索引
+     */
+    static final byte call_event_index = 4;
+    /**
+     * 数据包标识：紧凑编码，整数与长度以变长字节编码，服务端以相同编码返回结果
+     */
+    static final byte flag_compact = 0x01;
+    /**
+     * 数据包标识：调用方支持结构化异常，服务端以异常类名+错误信息+错误码返回异常，仅按策略附带堆栈
+     */
+    static final byte flag_structured_error = 0x02;
+    /**
+     * 数据包标识：调用方支持常用集合、枚举与记录类的原生编码，服务端以原生编码返回结果
+     */
+    static final byte flag_native_types = 0x04;
+    /**
+     * 数据包标识：调用方支持领域事件索引，服务端返回结果时不再回传事件名
+     */
+    static final byte flag_command_index = 0x08;
+    /**
+     * 返回数据包标识：服务端支持领域事件索引，且本数据包未回传事件名
+     */
+    static final byte flag_command_index_ack = 0x10;
+    /**
+     * 数据包标识：请求携带截止时间，数据包末尾为int剩余毫秒数，自服务端收到数据包时起算
+     */
+    static final byte flag_deadline = 0x20;
+    /**
+     * 数据包标识：二进制请求头，新版本的请求与返回数据包总是设置；旧版本数据包此字节为短字符串调用ID长度的高字节，总是0
+     */
+    static final byte flag_binary = 0x40;
+    private final static Map<String, Class<?>> interfaceClassMap = new ConcurrentHashMap<>(); //类名->类
+    private final static Map<String, SizePredictor> responseSizePredictors = new ConcurrentHashMap<>(); //领域事件名->响应大小预测器
+
+    /**
+     * 登记rpc接口的全部方法并为每个方法编译执行器，以方法ID发起的调用直接查表执行，首次调用无需再查找接口与编译 <br>
+     * {@link com.kaka.rpc.RemotingServiceDetector} 注册接口服务时自动调用；未登记的接口于首次调用时登记
+     *
+     * @param interfaceClass rpc接口类
+     */
+    public static void registerInterface(Class<?> interfaceClass) {
+        RemotingMethodTable.register(interfaceClass, StringUtils.toNumber(interfaceClass.getName()));
+    }
 
     @Override
     public Object execute(RpcMessage rpcMessage) {
         ByteBuf msg = (ByteBuf) rpcMessage.getBody();
-        short idLen = msg.readShort();
-        byte[] idBytes = new byte[idLen];
-        msg.readBytes(idBytes);
-        short cmdLen = msg.readShort();
-        byte[] cmdBytes = new byte[cmdLen];
-        msg.readBytes(cmdBytes);
-        String cmd = new String(cmdBytes, StandardCharsets.UTF_8);
+        boolean legacy = isLegacy(msg);
+        byte flags;
+        int id;
+        ByteBuf legacyId = null; //旧版本数据包的字符串调用ID，原样回传
+        if (legacy) {
+            flags = 0;
+            id = 0;
+            legacyId = msg.readSlice(msg.readShort());
+        } else {
+            flags = msg.readByte();
+            id = msg.readInt();
+        }
+        boolean compact = (flags & flag_compact) != 0;
+        boolean nativeTypes = (flags & flag_native_types) != 0;
+        RpcContext context = null;
+        if ((flags & flag_deadline) != 0) {
+            int end = msg.writerIndex() - 4;
+            long receivedNanos = rpcMessage.receivedNanos != 0 ? rpcMessage.receivedNanos : System.nanoTime();
+            context = new RpcContext(receivedNanos + TimeUnit.MILLISECONDS.toNanos(msg.getInt(end)));
+            msg.writerIndex(end);
+        }
+        byte callType = legacy ? call_event : msg.readByte();
+        String cmd;
+        String methodName = null;
+        RemotingMethodTable.Entry entry = null;
+        Proxy proxy = null;
+        if (callType == call_method_id) {
+            long interfaceId = msg.readLong();
+            long methodId = msg.readLong();
+            entry = RemotingMethodTable.get(interfaceId, methodId);
+            if (entry == null) {
+                proxy = this.retrieveProxy(String.valueOf(interfaceId));
+                if (proxy != null) {
+                    entry = RemotingMethodTable.resolve(proxy, interfaceId, methodId);
+                }
+            }
+            cmd = entry != null ? entry.name : "rpc:" + interfaceId + ":" + methodId;
+        } else if (callType == call_method_name) {
+            String interfaceName = Utils.readShortString(msg);
+            methodName = Utils.readShortString(msg);
+            cmd = "rpc:" + interfaceName + ":" + methodName;
+        } else if (callType == call_event_index) {
+            int index = Utils.readVarInt(msg);
+            cmd = CommandTable.of(rpcMessage.getCtx().channel()).get(index);
+            if (cmd == null) cmd = "#" + index; //未定义的索引，以不存在的事件名处理
+        } else {
+            if (callType == call_event_define) {
+                Utils.readVarInt(msg); //已由IO线程登记
+            }
+            cmd = Utils.readShortString(msg);
+        }
+        boolean event = callType != call_method_id && callType != call_method_name;
+        boolean commandIndex = (flags & flag_command_index) != 0;
 
         Facade facade = this.getFacade();
         ChannelHandlerContext ctx = rpcMessage.getCtx();
-        ByteBuf sendBuf = ctx.alloc().buffer(100);
+        SizePredictor predictor = entry != null ? entry.responseSize : (event ? responseSizePredictors.get(cmd) : null);
+        ByteBuf sendBuf = ctx.alloc().buffer(predictor != null ? predictor.predict() : 64);
         sendBuf.writeInt(NettyClient.cmd_sc_sync_result);
-        sendBuf.writeShort(idBytes.length);
-        sendBuf.writeBytes(idBytes);
-        sendBuf.writeShort(cmdLen);
-        sendBuf.writeBytes(cmdBytes);
+        if (legacy) {
+            sendBuf.writeShort(legacyId.readableBytes());
+            sendBuf.writeBytes(legacyId, legacyId.readerIndex(), legacyId.readableBytes());
+            Utils.writeShortString(sendBuf, cmd);
+        } else {
+            sendBuf.writeByte(commandIndex ? flags | flag_command_index_ack : flags);
+            sendBuf.writeInt(id);
+            if (!commandIndex) {
+                Utils.writeShortString(sendBuf, event ? cmd : "");
+            }
+        }
 
         if (NettyServer.protocolPreHandler != null) {
             try {
                 boolean retVal = NettyServer.protocolPreHandler.handler(opcode, cmd, ctx);
-                if (!retVal) return null;
+                if (!retVal) {
+                    //总是响应，避免调用方一直等待
+                    writeException(sendBuf, rejected(cmd), flags, null);
+                    ctx.writeAndFlush(sendBuf);
+                    return null;
+                }
             } catch (Exception e) {
-                Utils.writeException(sendBuf, e, serializer);
+                writeException(sendBuf, e, flags, null);
                 ctx.writeAndFlush(sendBuf);
                 return null;
             }
         }
 
-        int paramNum = msg.readShort();
+        if (context != null && context.isExpired()) {
+            //已超过调用方的截止时间，不再解码参数与执行
+            writeException(sendBuf, deadlineExceeded(), flags, null);
+            ctx.writeAndFlush(sendBuf);
+            return null;
+        }
+
+        int paramNum = compact ? Utils.readVarInt(msg) : msg.readShort();
         Exception paramEx = null;
         Object[] params = null;
         if (paramNum > 0) {
             params = new Object[paramNum];
             try {
                 for (int i = 0; i < paramNum; i++) {
-                    params[i] = Utils.readValue(msg, serializer);
+                    params[i] = Utils.readValue(msg, serializer, compact);
                 }
             } catch (Exception e) {
                 paramEx = e;
             }
         }
 
-        if (paramEx != null) {
-            Utils.writeException(sendBuf, paramEx, serializer);
-        } else if (cmd.startsWith("rpc:")) {
-            final String rpcPath = cmd.substring("rpc:".length());
-            final String[] parts = rpcPath.split(":");
-            final String interfaceName = parts[0];
-            final String methodName = parts[1];
-            final String interfaceIdStr = parts.length > 3 ? (parts[3].isEmpty() || parts[3].isBlank() || "null".equals(parts[3]) ? null : parts[3]) : null;
-            final Long interfaceId = interfaceIdStr != null ? Long.valueOf(interfaceIdStr) : null;
-            final Long methodId = parts.length > 2 ? (parts[2].isEmpty() || parts[2].isBlank() || "null".equals(parts[2]) ? null : Long.parseLong(parts[2])) : null;
-            try {
-                Class<?> clazz = getInterfaceClass(interfaceName, interfaceId);
-                Proxy proxy = this.retrieveProxy(interfaceIdStr == null ? clazz.getName() : interfaceIdStr);
-                if (proxy != null) {
-                    Map<Long, Method> methodMap = interfaceMethodMap.computeIfAbsent(clazz, k -> Utils.getAllMethods(clazz));
-                    Method method = methodMap.get(methodId);
-                    if (method == null) {
-                        method = Utils.findMethod(proxy.getClass(), methodName, params);
+        CompletionStage<?> pending = null; //待完成的异步结果
+        Method pendingMethod = null;
+        RpcContext prevContext = context != null ? RpcContext.enter(context) : null;
+        try {
+            if (paramEx != null) {
+                writeException(sendBuf, paramEx, flags, entry != null ? entry.method : null);
+            } else if (callType == call_method_id) {
+                try {
+                    if (entry == null) {
+                        writeException(sendBuf, new ClassNotFoundException("未找到接口对应的实现类或方法：" + cmd), flags, null);
+                    } else {
+                        if (proxy == null) {
+                            proxy = this.retrieveProxy(entry.proxyName);
+                        }
+                        if (proxy == null) {
+                            writeException(sendBuf, new ClassNotFoundException("未找到接口对应的实现类"), flags, null);
+                        } else {
+                            pending = writeResult(sendBuf, entry.invoker.invoke(proxy, params), compact, nativeTypes);
+                            pendingMethod = entry.method;
+                        }
                     }
-                    if (method == null) {
-                        Utils.writeException(sendBuf, new IllegalAccessException("未匹配到合适的方法" + methodName), serializer);
+                } catch (Throwable e) {
+                    writeException(sendBuf, e, flags, entry != null ? entry.method : null);
+                }
+            } else if (callType == call_method_name || cmd.startsWith("rpc:")) {
+                final String interfaceName;
+                Long interfaceId = null;
+                Long methodId = null;
+                if (callType == call_method_name) {
+                    interfaceName = cmd.substring("rpc:".length(), cmd.length() - methodName.length() - 1);
+                } else {
+                    //兼容以 rpc:接口完全限定名:接口方法名:方法ID:接口ID 字符串发起的调用
+                    final String[] parts = cmd.substring("rpc:".length()).split(":");
+                    interfaceName = parts[0];
+                    methodName = parts[1];
+                    interfaceId = parts.length > 3 ? parseId(parts[3]) : null;
+                    methodId = parts.length > 2 ? parseId(parts[2]) : null;
+                }
+                Method method = null;
+                try {
+                    Class<?> clazz = getInterfaceClass(interfaceName);
+                    proxy = this.retrieveProxy(interfaceId == null ? clazz.getName() : String.valueOf(interfaceId));
+                    if (proxy != null) {
+                        if (methodId != null) {
+                            entry = RemotingMethodTable.resolve(proxy, interfaceId == null ? StringUtils.toNumber(clazz.getName()) : interfaceId, methodId);
+                        }
+                        MethodInvoker invoker = entry != null ? entry.invoker : MethodResolver.resolve(proxy.getClass(), methodName, params);
+                        if (invoker == null) {
+                            writeException(sendBuf, new IllegalAccessException("未匹配到合适的方法" + methodName), flags, null);
+                        } else {
+                            method = invoker.method;
+                            pending = writeResult(sendBuf, invoker.invoke(proxy, params), compact, nativeTypes);
+                            pendingMethod = method;
+                        }
                     } else {
-                        Utils.writeResult(sendBuf, method.invoke(proxy, params), serializer);
+                        writeException(sendBuf, new ClassNotFoundException("未找到接口对应的实现类"), flags, null);
                     }
+                } catch (Throwable e) {
+                    writeException(sendBuf, e, flags, method);
+                }
+            } else if (!facade.hasCommand(cmd)) {
+                if ((flags & flag_structured_error) != 0) {
+                    writeException(sendBuf, new ClassNotFoundException("未找到远程执行处理器：" + cmd), flags, null);
                 } else {
-                    Utils.writeException(sendBuf, new ClassNotFoundException("未找到接口对应的实现类"), serializer);
+                    Utils.writeException(sendBuf, "未找到远程执行处理器：" + cmd, serializer, compact);
+                }
+            } else {
+                if (predictor == null) {
+                    predictor = responseSizePredictors.computeIfAbsent(cmd, k -> new SizePredictor(64));
+                }
+                try {
+                    RpcMessage message = new RpcMessage(cmd, params, ctx);
+                    IResult<Object> result = message.setResult("return", new SyncResult<>());
+                    this.sendMessage(message);
+                    pending = writeResult(sendBuf, result.get(), compact, nativeTypes);
+                } catch (Throwable ex) {
+                    writeException(sendBuf, ex, flags, null);
                 }
-            } catch (Throwable e) {
-                Utils.writeException(sendBuf, e, serializer);
-            }
-        } else if (!facade.hasCommand(cmd)) {
-            Utils.writeException(sendBuf, "未找到远程执行处理器：" + cmd, serializer);
-        } else {
-            try {
-                RpcMessage message = new RpcMessage(cmd, params, ctx);
-                IResult<Object> result = message.setResult("return", new SyncResult<>());
-                this.sendMessage(message);
-                Utils.writeResult(sendBuf, result.get(), serializer);
-            } catch (Throwable ex) {
-                Utils.writeException(sendBuf, ex, serializer);
             }
+        } finally {
+            if (context != null) RpcContext.exit(prevContext);
+        }
+        if (pending != null) {
+            writeLater(ctx, sendBuf, pending, flags, pendingMethod, predictor, rpcMessage.detachPermit());
+            return null;
+        }
+        if (predictor != null) {
+            predictor.record(sendBuf.readableBytes());
         }
         ctx.writeAndFlush(sendBuf);
         return null;
     }
 
-    private Class<?> getInterfaceClass(String className, Long classId) throws ClassNotFoundException {
-        Class<?> clazz = classId != null && interfaceClassMap.containsKey(classId) ? interfaceClassMap.get(classId) : null;
+    /**
+     * 写入执行结果
+     *
+     * @return 执行结果为 {@link CompletionStage} 时不写入并返回之，否则返回null
+     */
+    private static CompletionStage<?> writeResult(ByteBuf sendBuf, Object result, boolean compact, boolean nativeTypes) {
+        if (result instanceof CompletionStage<?> stage) return stage;
+        Utils.writeResult(sendBuf, result, serializer, compact, nativeTypes);
+        return null;
+    }
+
+    /**
+     * 异步结果完成时写入结果或异常并写出响应，在完成结果的线程中执行
+     *
+     * @param ctx       连接
+     * @param sendBuf   已写入响应头的发送缓冲区
+     * @param stage     异步结果
+     * @param flags     请求数据包标识
+     * @param method    执行的方法，用于判断是否返回异常堆栈，可为null
+     * @param predictor 响应大小预测器，可为null
+     * @param permit    处理中请求许可的释放操作，异步结果完成时执行，可为null
+     */
+    private static void writeLater(ChannelHandlerContext ctx, ByteBuf sendBuf, CompletionStage<?> stage, byte flags, Method method, SizePredictor predictor, Runnable permit) {
+        int headerIndex = sendBuf.writerIndex();
+        stage.whenComplete((value, ex) -> {
+            if (permit != null) permit.run();
+            Throwable error = ex;
+            if (error == null) {
+                try {
+                    Utils.writeResult(sendBuf, value, serializer, (flags & flag_compact) != 0, (flags & flag_native_types) != 0);
+                } catch (Throwable e) {
+                    sendBuf.writerIndex(headerIndex);
+                    error = e;
+                }
+            }
+            if (error != null) {
+                if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+                writeException(sendBuf, error, flags, method);
+            }
+            if (predictor != null) {
+                predictor.record(sendBuf.readableBytes());
+            }
+            ctx.writeAndFlush(sendBuf);
+        });
+    }
+
+    /**
+     * 在连接所属的IO线程中登记请求定义的领域事件索引，先于请求分发至业务线程执行，保证后续以索引调用的请求可查到事件名 <br>
+     * 仅查看数据包，不改变读索引
+     *
+     * @param ctx 连接
+     * @param msg 已读取操作码的请求数据包
+     */
+    static void defineCommand(ChannelHandlerContext ctx, ByteBuf msg) {
+        int index = msg.readerIndex();
+        if (msg.readableBytes() < 6 || isLegacy(msg) || msg.getByte(index + 5) != call_event_define) return;
+        msg.readerIndex(index + 6);
+        try {
+            int commandIndex = Utils.readVarInt(msg);
+            CommandTable.of(ctx.channel()).define(commandIndex, Utils.readShortString(msg));
+        } finally {
+            msg.readerIndex(index);
+        }
+    }
+
+    /**
+     * 是否为旧版本结构的请求或返回数据包：短字符串调用ID+短字符串事件名+… <br>
+     * 仅查看数据包，不改变读索引
+     *
+     * @param msg 已读取操作码的数据包
+     * @return true表示旧版本结构
+     */
+    static boolean isLegacy(ByteBuf msg) {
+        return msg.isReadable() && (msg.getByte(msg.readerIndex()) & flag_binary) == 0;
+    }
+
+    /**
+     * 读取旧版本结构请求数据包中的事件名，仅查看数据包，不改变读索引
+     *
+     * @param msg 已读取操作码的旧版本结构请求数据包
+     * @return 事件名，数据包不完整时返回null
+     */
+    static String legacyCommand(ByteBuf msg) {
+        int index = msg.readerIndex();
+        if (msg.readableBytes() < 4) return null;
+        int idLen = msg.getShort(index);
+        int cmdIndex = index + 2 + idLen;
+        if (idLen < 0 || cmdIndex + 2 > msg.writerIndex()) return null;
+        int cmdLen = msg.getShort(cmdIndex);
+        if (cmdLen < 0 || cmdIndex + 2 + cmdLen > msg.writerIndex()) return null;
+        return msg.getCharSequence(cmdIndex + 2, cmdLen, StandardCharsets.UTF_8).toString();
+    }
+
+    static RpcException rejected(Object cmd) {
+        return new RpcException(RpcException.code_rejected, "请求被拒绝：" + cmd);
+    }
+
+    private static RpcException deadlineExceeded() {
+        return new RpcException(RpcException.code_deadline_exceeded, "已超过调用方的截止时间");
+    }
+
+    /**
+     * 在IO线程中直接以异常响应请求，不分发至业务线程执行，用于拒绝超出处理中数量限制的请求 <br>
+     * 仅查看数据包，不改变读索引
+     *
+     * @param ctx 连接
+     * @param msg 已读取操作码的请求数据包
+     * @param ex  异常
+     */
+    static void reject(ChannelHandlerContext ctx, ByteBuf msg, Throwable ex) {
+        int index = msg.readerIndex();
+        if (isLegacy(msg)) {
+            //旧版本结构原样回传调用ID与事件名
+            String cmd = legacyCommand(msg);
+            if (cmd == null) return;
+            int idLen = msg.getShort(index);
+            ByteBuf sendBuf = ctx.alloc().buffer(64);
+            sendBuf.writeInt(NettyClient.cmd_sc_sync_result);
+            sendBuf.writeShort(idLen);
+            sendBuf.writeBytes(msg, index + 2, idLen);
+            Utils.writeShortString(sendBuf, cmd);
+            writeException(sendBuf, ex, (byte) 0, null);
+            ctx.writeAndFlush(sendBuf);
+            return;
+        }
+        if (msg.readableBytes() < 5) return;
+        byte flags = msg.getByte(index);
+        boolean commandIndex = (flags & flag_command_index) != 0;
+        ByteBuf sendBuf = ctx.alloc().buffer(64);
+        sendBuf.writeInt(NettyClient.cmd_sc_sync_result);
+        sendBuf.writeByte(commandIndex ? flags | flag_command_index_ack : flags);
+        sendBuf.writeInt(msg.getInt(index + 1));
+        if (!commandIndex) {
+            Utils.writeShortString(sendBuf, ""); //未解析事件名，调用方按调用ID匹配
+        }
+        writeException(sendBuf, ex, flags, null);
+        ctx.writeAndFlush(sendBuf);
+    }
+
+    /**
+     * 写入异常，调用方支持时写入结构化异常，否则写入异常堆栈文本
+     *
+     * @param sendBuf 发送缓冲区
+     * @param ex      异常
+     * @param flags   请求数据包标识
+     * @param method  执行的方法，用于判断是否返回异常堆栈，可为null
+     */
+    private static void writeException(ByteBuf sendBuf, Throwable ex, byte flags, Method method) {
+        if ((flags & flag_structured_error) != 0) {
+            sendBuf.writeByte(-2); //写入结构化异常
+            RemoteErrors.write(sendBuf, ex, RemoteErrors.isStackTraceEnabled(method));
+        } else {
+            Utils.writeException(sendBuf, ex, serializer, (flags & flag_compact) != 0);
+        }
+    }
+
+    static Long parseId(String id) {
+        return id.isBlank() || "null".equals(id) ? null : Long.valueOf(id);
+    }
+
+    private Class<?> getInterfaceClass(String className) throws ClassNotFoundException {
+        Class<?> clazz = interfaceClassMap.get(className);
         if (clazz == null) {
             clazz = Class.forName(className);
-            interfaceClassMap.put(classId, clazz);
+            interfaceClassMap.put(className, clazz);
         }
         return clazz;
     }
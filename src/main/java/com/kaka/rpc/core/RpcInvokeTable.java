@@ -0,0 +1,84 @@
+package com.kaka.rpc.core;
+
+import io.netty.util.collection.IntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 等待远端返回的调用表，以int调用ID为键 <br>
+ * 按调用ID分段加锁，每段为开放寻址的原始类型哈希表，调用ID单调递增，各段负载均匀
+ *
+ * @author zkpursuit
+ */
+final class RpcInvokeTable {
+
+    private static final int segment_count = 16;
+    private static final int segment_mask = segment_count - 1;
+    private final IntObjectHashMap<NettyClient.RpcInvoke>[] segments;
+    private final AtomicInteger size = new AtomicInteger();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    RpcInvokeTable() {
+        segments = new IntObjectHashMap[segment_count];
+        for (int i = 0; i < segment_count; i++) {
+            segments[i] = new IntObjectHashMap<>();
+        }
+    }
+
+    /**
+     * 添加等待返回的调用
+     *
+     * @param id     调用ID
+     * @param invoke 调用
+     */
+    void put(int id, NettyClient.RpcInvoke invoke) {
+        IntObjectHashMap<NettyClient.RpcInvoke> segment = segments[id & segment_mask];
+        synchronized (segment) {
+            if (segment.put(id, invoke) == null) size.incrementAndGet();
+        }
+    }
+
+    /**
+     * 移除并返回调用
+     *
+     * @param id 调用ID
+     * @return 调用，不存在时返回null
+     */
+    NettyClient.RpcInvoke remove(int id) {
+        IntObjectHashMap<NettyClient.RpcInvoke> segment = segments[id & segment_mask];
+        synchronized (segment) {
+            NettyClient.RpcInvoke invoke = segment.remove(id);
+            if (invoke != null) size.decrementAndGet();
+            return invoke;
+        }
+    }
+
+    /**
+     * 移除并返回所有调用
+     *
+     * @return 所有等待返回的调用
+     */
+    List<NettyClient.RpcInvoke> removeAll() {
+        List<NettyClient.RpcInvoke> list = new ArrayList<>();
+        for (IntObjectHashMap<NettyClient.RpcInvoke> segment : segments) {
+            synchronized (segment) {
+                if (segment.isEmpty()) continue;
+                list.addAll(segment.values());
+                size.addAndGet(-segment.size());
+                segment.clear();
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 等待返回的调用数量
+     *
+     * @return 调用数量
+     */
+    int size() {
+        return size.get();
+    }
+}
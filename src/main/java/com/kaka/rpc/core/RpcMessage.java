@@ -1,10 +1,17 @@
 package com.kaka.rpc.core;
 
 import com.kaka.notice.Message;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * 通信协议领域事件消息
+ * 通信协议领域事件消息 <br>
+ * 服务端收到的数据包以引用原始数据包的切片作为消息体，不复制数据，{@link RpcMessageHandler#execute(RpcMessage)}执行后释放；
+ * 须在执行后继续使用消息体时调用 {@link #retainBody()} 并在使用完毕后自行释放；同一协议号只应有一个处理器读取消息体，
+ * 见 {@link RpcMessageHandler} <br>
+ * 服务端限制处理中请求数量时，消息持有的许可与消息体一同释放
  *
  * @author zkpursuit
  */
@@ -13,6 +20,10 @@ public class RpcMessage extends Message {
     ChannelHandlerContext ctx;
     Object client;
     boolean fromServer = false; //是否为服务器发送的消息
+    boolean releaseBody = false; //是否由本消息负责释放消息体
+    InFlightLimiter limiter; //处理中请求数量限制，持有许可时不为null
+    AtomicInteger connectionInFlight; //所属连接的处理中请求计数
+    long receivedNanos; //服务端收到rpc调用数据包的时间，以System.nanoTime()计，用于计算调用方传递的截止时间
 
     public RpcMessage(Object what, Object data, ChannelHandlerContext ctx) {
         super(what, data);
@@ -52,6 +63,7 @@ public class RpcMessage extends Message {
         return this.ctx;
     }
 
+    @SuppressWarnings("unchecked")
     public <T> T getClient() {
         return (T) this.client;
     }
@@ -60,8 +72,46 @@ public class RpcMessage extends Message {
         return fromServer;
     }
 
+    /**
+     * 保留消息体，使其在领域事件处理后仍可使用，使用完毕后须调用 {@link ByteBuf#release()} 释放
+     *
+     * @return 消息体，非 {@link ByteBuf} 时返回null
+     */
+    public ByteBuf retainBody() {
+        return this.getBody() instanceof ByteBuf buf ? buf.retain() : null;
+    }
+
+    /**
+     * 释放由本消息负责的消息体及处理中请求许可，重复调用无副作用
+     */
+    void release() {
+        if (releaseBody) {
+            releaseBody = false;
+            if (this.getBody() instanceof ByteBuf buf) buf.release();
+        }
+        InFlightLimiter limiter = this.limiter;
+        if (limiter != null) {
+            this.limiter = null;
+            limiter.release(connectionInFlight);
+        }
+    }
+
+    /**
+     * 转移处理中请求许可，由调用方在异步处理完成后执行返回的释放操作
+     *
+     * @return 许可的释放操作，未持有许可时返回null
+     */
+    Runnable detachPermit() {
+        InFlightLimiter limiter = this.limiter;
+        if (limiter == null) return null;
+        this.limiter = null;
+        AtomicInteger connectionInFlight = this.connectionInFlight;
+        return () -> limiter.release(connectionInFlight);
+    }
+
     @Override
     public void reset() {
+        release();
         super.reset();
         this.ctx = null;
         this.client = null;
@@ -5,14 +5,17 @@ import com.kaka.notice.IResult;
 import com.kaka.notice.Message;
 
 /**
- * 领域事件处理器基类
+ * 领域事件处理器基类 <br>
+ * 服务端分发的数据包只由一个处理器消费：首个执行完毕的处理器即释放消息体，同一协议号另行注册的处理器（如同时注册的
+ * 中介者或观察者）在其后读取到的是已释放的消息体；需要多个处理器读取同一数据包时，须在先执行的处理器中调用
+ * {@link RpcMessage#retainBody()} 并将保留的数据包交由后续处理器释放
  *
  * @author zkpursuit
  */
 abstract public class RpcMessageHandler extends Command {
 
     /**
-     * 领域事件处理方法
+     * 领域事件处理方法，执行后释放由事件对象负责的数据包
      *
      * @param message 事件对象
      */
@@ -28,6 +31,8 @@ abstract public class RpcMessageHandler extends Command {
                 }
             } catch (Throwable e) {
                 throw new RuntimeException(e);
+            } finally {
+                pm.release();
             }
         }
     }
@@ -36,7 +41,8 @@ abstract public class RpcMessageHandler extends Command {
      * 领域事件处理方法
      *
      * @param message 事件对象
-     * @return 处理结果
+     * @return 处理结果，远端调用时可返回 {@link java.util.concurrent.CompletionStage}，完成时再返回结果给调用方；
+     * 须在返回后继续读取数据包时调用 {@link RpcMessage#retainBody()}
      * @throws Throwable 处理领域事件时可能抛出的异常
      */
     abstract public Object execute(RpcMessage message) throws Throwable;
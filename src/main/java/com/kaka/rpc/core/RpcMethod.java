@@ -0,0 +1,58 @@
+package com.kaka.rpc.core;
+
+/**
+ * RPC接口方法描述，由客户端在首次调用时构建并缓存 <br>
+ * 存在方法ID时以定长的接口ID与方法ID发送调用，否则回退为发送接口名与方法名
+ *
+ * @author zkpursuit
+ * @see com.kaka.rpc.RpcClient
+ */
+public final class RpcMethod {
+
+    final String interfaceName;
+    final String methodName;
+    final long interfaceId;
+    final long methodId;
+    final boolean hasId;
+    final String name;
+    final SizePredictor requestSize = new SizePredictor(64); //请求大小预测器，参数需经序列化器序列化时使用
+
+    /**
+     * 构造方法
+     *
+     * @param interfaceName 接口完全限定名
+     * @param methodName    接口方法名
+     * @param interfaceId   接口唯一标识，可为null
+     * @param methodId      方法唯一标识，为null时将以方法名进行调用
+     */
+    public RpcMethod(String interfaceName, String methodName, Long interfaceId, Long methodId) {
+        this.interfaceName = interfaceName;
+        this.methodName = methodName;
+        this.hasId = interfaceId != null && methodId != null;
+        this.interfaceId = interfaceId == null ? 0 : interfaceId;
+        this.methodId = methodId == null ? 0 : methodId;
+        this.name = "rpc:" + interfaceName + ":" + methodName;
+    }
+
+    /**
+     * 获取rpc调用名，格式为 rpc:接口完全限定名:接口方法名
+     *
+     * @return rpc调用名
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getInterfaceName() {
+        return interfaceName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -17,6 +17,11 @@ final public class RpcOpCode {
      */
     public final static String sc_rpc = "-105";
 
+    /**
+     * 连接建立后交换协议版本与能力的握手
+     */
+    public final static int handshake = -108;
+
     /**
      * 错误相关
      */
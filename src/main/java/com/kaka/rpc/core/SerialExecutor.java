@@ -0,0 +1,65 @@
+package com.kaka.rpc.core;
+
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 串行执行器，提交的任务按提交顺序逐个在底层执行器中执行，同一时刻至多一个任务在执行 <br>
+ * 任务队列为空时不占用底层执行器的线程
+ *
+ * @author zkpursuit
+ */
+final class SerialExecutor implements Executor {
+
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(SerialExecutor.class);
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * 构造方法
+     *
+     * @param executor 底层执行器
+     */
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!running.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::drain);
+        } catch (Throwable e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    logger.error(e.getLocalizedMessage(), e);
+                }
+            }
+        } finally {
+            running.set(false);
+            //释放执行权与队列判空之间可能有新任务入队
+            if (!tasks.isEmpty()) schedule();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.kaka.rpc.core;
+
+/**
+ * 数据包大小预测器，参照Netty的AdaptiveRecvByteBufAllocator <br>
+ * 实际大小达到预测值时立即扩大，连续两次明显小于预测值时逐级缩小 <br>
+ * 多线程下仅为近似预测，不加锁
+ *
+ * @author zkpursuit
+ */
+final class SizePredictor {
+
+    private static final int index_increment = 4;
+    private static final int index_decrement = 1;
+    private static final int[] size_table;
+
+    static {
+        int count = 0;
+        for (int i = 16; i < 512; i += 16) count++;
+        for (int i = 512; i > 0; i <<= 1) count++;
+        size_table = new int[count];
+        int n = 0;
+        for (int i = 16; i < 512; i += 16) size_table[n++] = i;
+        for (int i = 512; i > 0; i <<= 1) size_table[n++] = i;
+    }
+
+    private int index;
+    private int nextSize;
+    private boolean decreaseNow;
+
+    /**
+     * 构造方法
+     *
+     * @param initial 初始预测大小
+     */
+    SizePredictor(int initial) {
+        this.index = indexOf(initial);
+        this.nextSize = size_table[index];
+    }
+
+    private static int indexOf(int size) {
+        int low = 0;
+        int high = size_table.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (size_table[mid] < size) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 预测下一个数据包的大小
+     *
+     * @return 预测的字节数
+     */
+    int predict() {
+        return nextSize;
+    }
+
+    /**
+     * 记录实际的数据包大小
+     *
+     * @param actual 实际字节数
+     */
+    void record(int actual) {
+        int index = this.index;
+        if (actual <= size_table[Math.max(0, index - index_decrement)]) {
+            if (decreaseNow) {
+                index = Math.max(index - index_decrement, 0);
+                this.index = index;
+                this.nextSize = size_table[index];
+                this.decreaseNow = false;
+            } else {
+                this.decreaseNow = true;
+            }
+        } else if (actual >= nextSize) {
+            index = Math.min(Math.max(index + index_increment, indexOf(actual)), size_table.length - 1);
+            this.index = index;
+            this.nextSize = size_table[index];
+            this.decreaseNow = false;
+        }
+    }
+}
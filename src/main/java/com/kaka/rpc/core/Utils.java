@@ -1,14 +1,20 @@
 package com.kaka.rpc.core;
 
-import com.kaka.util.ReflectUtils;
 import com.kaka.util.Serializer;
 import com.kaka.util.StringUtils;
+import com.kaka.rpc.codec.StreamSerializer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -19,10 +25,11 @@ final class Utils {
      *
      * @param sendBuf 发送缓冲区
      * @param exInfo  异常基础信息
+     * @param compact 是否使用紧凑编码
      */
-    static void writeException(ByteBuf sendBuf, String exInfo, Serializer<Object> serializer) {
+    static void writeException(ByteBuf sendBuf, String exInfo, Serializer<Object> serializer, boolean compact) {
         sendBuf.writeByte(-1); //写入异常
-        writeValue(sendBuf, exInfo, serializer);
+        writeValue(sendBuf, exInfo, serializer, compact, false);
     }
 
     /**
@@ -30,39 +37,150 @@ final class Utils {
      *
      * @param sendBuf 发送缓冲区
      * @param ex      异常
+     * @param compact 是否使用紧凑编码
      */
-    static void writeException(ByteBuf sendBuf, Throwable ex, Serializer<Object> serializer) {
+    static void writeException(ByteBuf sendBuf, Throwable ex, Serializer<Object> serializer, boolean compact) {
         try (ByteArrayOutputStream baOs = new ByteArrayOutputStream()) {
             try (PrintStream ps = new PrintStream(baOs, true, StandardCharsets.UTF_8)) {
                 ex.printStackTrace(ps);
             }
             sendBuf.writeByte(-1); //写入异常
             byte[] exBytes = baOs.toByteArray();
-            writeValue(sendBuf, exBytes, serializer);
+            writeValue(sendBuf, exBytes, serializer, compact, false);
         } catch (Exception e) {
-            writeException(sendBuf, "关闭远端输出流错误", serializer);
+            writeException(sendBuf, "关闭远端输出流错误", serializer, compact);
         }
     }
 
+    /**
+     * 短字符串缓存，用于事件名、接口名等重复出现的ASCII短字符串，以字节哈希值定位槽位
+     */
+    private static final String[] string_cache = new String[1024];
+    private static final int string_cache_mask = string_cache.length - 1;
+    private static final int string_cache_max_length = 64;
+
+    /**
+     * 写入短字符串，结构为：short字节长度+UTF-8字节 <br>
+     * 直接编码至缓冲区，预留长度后回填
+     *
+     * @param buf 字节缓冲区
+     * @param str 字符串
+     */
+    static void writeShortString(ByteBuf buf, String str) {
+        int lengthIndex = buf.writerIndex();
+        buf.writeShort(0);
+        int length = ByteBufUtil.writeUtf8(buf, str);
+        buf.setShort(lengthIndex, length);
+    }
+
+    /**
+     * 读取短字符串，结构为：short字节长度+UTF-8字节 <br>
+     * ASCII短字符串优先从缓存中获取
+     *
+     * @param buf 字节缓冲区
+     * @return 字符串
+     */
+    static String readShortString(ByteBuf buf) {
+        int length = buf.readShort();
+        if (length > string_cache_max_length) {
+            return buf.readCharSequence(length, StandardCharsets.UTF_8).toString();
+        }
+        int index = buf.readerIndex();
+        int hash = 1;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            byte b = buf.getByte(index + i);
+            ascii &= b >= 0;
+            hash = 31 * hash + b;
+        }
+        if (!ascii) {
+            return buf.readCharSequence(length, StandardCharsets.UTF_8).toString();
+        }
+        int slot = (hash ^ (hash >>> 16)) & string_cache_mask;
+        String cached = string_cache[slot];
+        if (cached != null && cached.length() == length) {
+            boolean equal = true;
+            for (int i = 0; i < length; i++) {
+                if (cached.charAt(i) != buf.getByte(index + i)) {
+                    equal = false;
+                    break;
+                }
+            }
+            if (equal) {
+                buf.skipBytes(length);
+                return cached;
+            }
+        }
+        String str = buf.readCharSequence(length, StandardCharsets.US_ASCII).toString();
+        string_cache[slot] = str;
+        return str;
+    }
+
+    /**
+     * 写入字符串，结构为：长度+UTF-8字节，直接编码至缓冲区不产生临时字节数组 <br>
+     * 定长编码时预留4字节长度后回填，紧凑编码时先计算UTF-8字节数再写入变长长度
+     *
+     * @param buf     字节缓冲区
+     * @param str     字符串
+     * @param compact 是否使用紧凑编码
+     */
+    static void writeString(ByteBuf buf, String str, boolean compact) {
+        if (compact) {
+            writeVarInt(buf, ByteBufUtil.utf8Bytes(str));
+            ByteBufUtil.writeUtf8(buf, str);
+        } else {
+            int lengthIndex = buf.writerIndex();
+            buf.writeInt(0);
+            int length = ByteBufUtil.writeUtf8(buf, str);
+            buf.setInt(lengthIndex, length);
+        }
+    }
+
+    /**
+     * 读取字符串，直接由缓冲区解码
+     *
+     * @param buf     字节缓冲区
+     * @param compact 是否使用紧凑编码
+     * @return 字符串
+     */
+    static String readString(ByteBuf buf, boolean compact) {
+        int length = readLength(buf, compact);
+        return buf.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+
     /**
      * 写入返回到调用方的结果
      *
-     * @param sendBuf 发送缓冲区
-     * @param result  返回到调用方的结果数据
+     * @param sendBuf     发送缓冲区
+     * @param result      返回到调用方的结果数据
+     * @param compact     是否使用紧凑编码
+     * @param nativeTypes 是否以原生编码写入常用集合、枚举与记录类
      */
-    static void writeResult(ByteBuf sendBuf, Object result, Serializer<Object> serializer) {
-        sendBuf.writeByte(1); //写入正确的结果
-        writeValue(sendBuf, result, serializer);
+    static void writeResult(ByteBuf sendBuf, Object result, Serializer<Object> serializer, boolean compact, boolean nativeTypes) {
+        int writerIndex = sendBuf.writerIndex();
+        int size = estimateSize(result, compact);
+        if (size > 0) {
+            sendBuf.ensureWritable(size + 1); //可估算大小时一次性扩容
+        }
+        try {
+            sendBuf.writeByte(1); //写入正确的结果
+            writeValue(sendBuf, result, serializer, compact, nativeTypes);
+        } catch (RuntimeException e) {
+            sendBuf.writerIndex(writerIndex); //丢弃写入一半的结果，以便调用方写入异常
+            throw e;
+        }
     }
 
     /**
      * 向字节缓冲区写入数据
      *
-     * @param sendBuf    字节缓冲区
-     * @param value      待写入的数据
-     * @param serializer 待写入的非基础类型数据序列化器
+     * @param sendBuf     字节缓冲区
+     * @param value       待写入的数据
+     * @param serializer  待写入的非基础类型数据序列化器
+     * @param compact     是否使用紧凑编码，整数与长度以变长字节写入
+     * @param nativeTypes 是否以原生编码写入常用集合、枚举与记录类，须对端支持
      */
-    static void writeValue(ByteBuf sendBuf, Object value, Serializer<Object> serializer) {
+    static void writeValue(ByteBuf sendBuf, Object value, Serializer<Object> serializer, boolean compact, boolean nativeTypes) {
         if (value == null) {
             sendBuf.writeByte(0);
             return;
@@ -76,13 +194,13 @@ final class Utils {
             sendBuf.writeBoolean((boolean) value);
         } else if (clazz == Short.class) {
             sendBuf.writeByte(3);
-            sendBuf.writeShort((short) value);
+            writeShort(sendBuf, (short) value, compact);
         } else if (clazz == Integer.class) {
             sendBuf.writeByte(4);
-            sendBuf.writeInt((int) value);
+            writeInt(sendBuf, (int) value, compact);
         } else if (clazz == Long.class) {
             sendBuf.writeByte(5);
-            sendBuf.writeLong((long) value);
+            writeLong(sendBuf, (long) value, compact);
         } else if (clazz == Float.class) {
             sendBuf.writeByte(6);
             sendBuf.writeFloat((float) value);
@@ -91,147 +209,207 @@ final class Utils {
             sendBuf.writeDouble((double) value);
         } else if (clazz == String.class) {
             sendBuf.writeByte(8);
-            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
-            sendBuf.writeInt(bytes.length);
-            sendBuf.writeBytes(bytes);
+            writeString(sendBuf, (String) value, compact);
         } else if (clazz == Character.class) {
             sendBuf.writeByte(9);
-            sendBuf.writeChar((char) value);
+            writeChar(sendBuf, (char) value, compact);
         } else if (clazz == byte[].class) {
             sendBuf.writeByte(11);
             byte[] bytes = (byte[]) value;
-            sendBuf.writeInt(bytes.length);
+            writeLength(sendBuf, bytes.length, compact);
             sendBuf.writeBytes(bytes);
         } else if (clazz == boolean[].class) {
             sendBuf.writeByte(12);
             boolean[] bs = (boolean[]) value;
-            sendBuf.writeInt(bs.length);
+            writeLength(sendBuf, bs.length, compact);
             for (boolean b : bs) {
                 sendBuf.writeBoolean(b);
             }
         } else if (clazz == short[].class) {
             sendBuf.writeByte(13);
-            short[] s = (short[]) value;
-            sendBuf.writeInt(s.length);
-            for (short b : s) {
-                sendBuf.writeShort(b);
-            }
+            writeShorts(sendBuf, (short[]) value, compact);
         } else if (clazz == int[].class) {
             sendBuf.writeByte(14);
-            int[] s = (int[]) value;
-            sendBuf.writeInt(s.length);
-            for (int b : s) {
-                sendBuf.writeInt(b);
-            }
+            writeInts(sendBuf, (int[]) value, compact);
         } else if (clazz == long[].class) {
             sendBuf.writeByte(15);
-            long[] s = (long[]) value;
-            sendBuf.writeInt(s.length);
-            for (long b : s) {
-                sendBuf.writeLong(b);
-            }
+            writeLongs(sendBuf, (long[]) value, compact);
         } else if (clazz == float[].class) {
             sendBuf.writeByte(16);
-            float[] s = (float[]) value;
-            sendBuf.writeInt(s.length);
-            for (float b : s) {
-                sendBuf.writeFloat(b);
-            }
+            writeFloats(sendBuf, (float[]) value, compact);
         } else if (clazz == double[].class) {
             sendBuf.writeByte(17);
-            double[] s = (double[]) value;
-            sendBuf.writeInt(s.length);
-            for (double b : s) {
-                sendBuf.writeDouble(b);
-            }
+            writeDoubles(sendBuf, (double[]) value, compact);
         } else if (clazz == String[].class) {
             sendBuf.writeByte(18);
             String[] s = (String[]) value;
-            sendBuf.writeInt(s.length);
+            writeLength(sendBuf, s.length, compact);
             for (String b : s) {
-                byte[] bytes = b.getBytes(StandardCharsets.UTF_8);
-                sendBuf.writeInt(bytes.length);
-                sendBuf.writeBytes(bytes);
+                writeString(sendBuf, b, compact);
             }
         } else if (clazz == char[].class) {
             sendBuf.writeByte(19);
-            char[] s = (char[]) value;
-            sendBuf.writeInt(s.length);
-            for (char b : s) {
-                sendBuf.writeChar(b);
-            }
+            writeChars(sendBuf, (char[]) value, compact);
         } else if (clazz == Byte[].class) {
             sendBuf.writeByte(21);
             Byte[] s = (Byte[]) value;
-            sendBuf.writeInt(s.length);
+            writeLength(sendBuf, s.length, compact);
             for (Byte b : s) {
                 sendBuf.writeByte(b);
             }
         } else if (clazz == Boolean[].class) {
             sendBuf.writeByte(22);
             Boolean[] s = (Boolean[]) value;
-            sendBuf.writeInt(s.length);
+            writeLength(sendBuf, s.length, compact);
             for (Boolean b : s) {
                 sendBuf.writeBoolean(b);
             }
         } else if (clazz == Short[].class) {
             sendBuf.writeByte(23);
             Short[] s = (Short[]) value;
-            sendBuf.writeInt(s.length);
-            for (Short b : s) {
-                sendBuf.writeShort(b);
+            short[] a = new short[s.length];
+            for (int i = 0; i < s.length; i++) {
+                a[i] = s[i];
             }
+            writeShorts(sendBuf, a, compact);
         } else if (clazz == Integer[].class) {
             sendBuf.writeByte(24);
             Integer[] s = (Integer[]) value;
-            sendBuf.writeInt(s.length);
-            for (Integer b : s) {
-                sendBuf.writeInt(b);
+            int[] a = new int[s.length];
+            for (int i = 0; i < s.length; i++) {
+                a[i] = s[i];
             }
+            writeInts(sendBuf, a, compact);
         } else if (clazz == Long[].class) {
             sendBuf.writeByte(25);
             Long[] s = (Long[]) value;
-            sendBuf.writeInt(s.length);
-            for (Long b : s) {
-                sendBuf.writeLong(b);
+            long[] a = new long[s.length];
+            for (int i = 0; i < s.length; i++) {
+                a[i] = s[i];
             }
+            writeLongs(sendBuf, a, compact);
         } else if (clazz == Float[].class) {
             sendBuf.writeByte(26);
             Float[] s = (Float[]) value;
-            sendBuf.writeInt(s.length);
-            for (Float b : s) {
-                sendBuf.writeFloat(b);
+            float[] a = new float[s.length];
+            for (int i = 0; i < s.length; i++) {
+                a[i] = s[i];
             }
+            writeFloats(sendBuf, a, compact);
         } else if (clazz == Double[].class) {
             sendBuf.writeByte(27);
             Double[] s = (Double[]) value;
-            sendBuf.writeInt(s.length);
-            for (Double b : s) {
-                sendBuf.writeDouble(b);
+            double[] a = new double[s.length];
+            for (int i = 0; i < s.length; i++) {
+                a[i] = s[i];
             }
+            writeDoubles(sendBuf, a, compact);
         } else if (clazz == Character[].class) {
             sendBuf.writeByte(29);
             Character[] s = (Character[]) value;
-            sendBuf.writeInt(s.length);
-            for (Character b : s) {
-                sendBuf.writeChar(b);
+            char[] a = new char[s.length];
+            for (int i = 0; i < s.length; i++) {
+                a[i] = s[i];
+            }
+            writeChars(sendBuf, a, compact);
+        } else {
+            int tag = nativeTypes ? NativeTypes.tagOf(value) : 0;
+            if (tag != 0) {
+                NativeTypes.write(sendBuf, value, tag, serializer, compact);
+            } else {
+                writeSerialized(sendBuf, value, serializer, compact);
+            }
+        }
+    }
+
+    /**
+     * 以序列化器写入数据，结构为：类型100+长度+序列化字节
+     */
+    private static void writeSerialized(ByteBuf sendBuf, Object value, Serializer<Object> serializer, boolean compact) {
+        if (serializer instanceof StreamSerializer<Object> ss) {
+            sendBuf.writeByte(100);
+            int lengthIndex = sendBuf.writerIndex();
+            if (compact) {
+                sendBuf.writeZero(5);
+            } else {
+                sendBuf.writeInt(0);
+            }
+            int start = sendBuf.writerIndex();
+            try (ByteBufOutputStream out = new ByteBufOutputStream(sendBuf)) {
+                ss.serialize(value, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int length = sendBuf.writerIndex() - start;
+            if (compact) {
+                setPaddedVarInt(sendBuf, lengthIndex, length);
+            } else {
+                sendBuf.setInt(lengthIndex, length);
             }
         } else {
             sendBuf.writeByte(100);
             byte[] bytes = serializer.serialize(value);
-            sendBuf.writeInt(bytes.length);
+            writeLength(sendBuf, bytes.length, compact);
             sendBuf.writeBytes(bytes);
         }
     }
 
+    /**
+     * 估算数据写入字节缓冲区后的字节数，用于一次性分配足够的缓冲区
+     *
+     * @param value   待写入的数据
+     * @param compact 是否使用紧凑编码
+     * @return 估算的字节数（不小于实际字节数），需经序列化器序列化的数据无法估算，返回-1
+     */
+    static int estimateSize(Object value, boolean compact) {
+        if (value == null) return 1;
+        Class<?> clazz = value.getClass();
+        if (clazz == Byte.class || clazz == Boolean.class) return 2;
+        if (clazz == Short.class || clazz == Character.class) return 4;
+        if (clazz == Integer.class || clazz == Float.class) return 6;
+        if (clazz == Long.class || clazz == Double.class) return 11;
+        if (clazz == String.class) return 6 + estimateUtf8Bytes((String) value);
+        if (!clazz.isArray()) return -1;
+        if (clazz == byte[].class) return 6 + ((byte[]) value).length;
+        if (clazz == boolean[].class) return 6 + ((boolean[]) value).length;
+        if (clazz == short[].class) return 6 + ((short[]) value).length * 3;
+        if (clazz == char[].class) return 6 + ((char[]) value).length * 3;
+        if (clazz == int[].class) return 6 + ((int[]) value).length * 5;
+        if (clazz == float[].class) return 6 + ((float[]) value).length * 4;
+        if (clazz == long[].class) return 6 + ((long[]) value).length * 10;
+        if (clazz == double[].class) return 6 + ((double[]) value).length * 8;
+        if (clazz == String[].class) {
+            int size = 6;
+            for (String str : (String[]) value) {
+                size += str == null ? 5 : 5 + estimateUtf8Bytes(str);
+            }
+            return size;
+        }
+        if (clazz == Byte[].class || clazz == Boolean[].class) return 6 + ((Object[]) value).length;
+        if (clazz == Short[].class || clazz == Character[].class) return 6 + ((Object[]) value).length * 3;
+        if (clazz == Integer[].class) return 6 + ((Object[]) value).length * 5;
+        if (clazz == Float[].class) return 6 + ((Object[]) value).length * 4;
+        if (clazz == Long[].class) return 6 + ((Object[]) value).length * 10;
+        if (clazz == Double[].class) return 6 + ((Object[]) value).length * 8;
+        return -1;
+    }
+
+    /**
+     * 估算字符串的UTF-8字节数，短字符串取最大可能值以免逐字符计算
+     */
+    private static int estimateUtf8Bytes(String str) {
+        return str.length() <= 256 ? ByteBufUtil.utf8MaxBytes(str) : ByteBufUtil.utf8Bytes(str);
+    }
+
     /**
      * 从字节缓冲区读取数据
      *
      * @param byteBuf    字节缓冲区
      * @param serializer 待读取的非基础类型数据序列化器
+     * @param compact    是否使用紧凑编码，整数与长度以变长字节读取
      * @return 反序列化后的数据
      */
-    static Object readValue(ByteBuf byteBuf, Serializer<Object> serializer) {
+    static Object readValue(ByteBuf byteBuf, Serializer<Object> serializer, boolean compact) {
         int type = byteBuf.readByte();
         switch (type) {
             case 0:
@@ -241,191 +419,538 @@ final class Utils {
             case 2:
                 return byteBuf.readBoolean();
             case 3:
-                return byteBuf.readShort();
+                return readShort(byteBuf, compact);
             case 4:
-                return byteBuf.readInt();
+                return readInt(byteBuf, compact);
             case 5:
-                return byteBuf.readLong();
+                return readLong(byteBuf, compact);
             case 6:
                 return byteBuf.readFloat();
             case 7:
                 return byteBuf.readDouble();
             case 8:
-                int strLen = byteBuf.readInt();
-                byte[] bytes = new byte[strLen];
-                byteBuf.readBytes(bytes);
-                return new String(bytes, StandardCharsets.UTF_8);
+                return readString(byteBuf, compact);
             case 9:
-                return byteBuf.readChar();
+                return readChar(byteBuf, compact);
             case 11:
-                int len11 = byteBuf.readInt();
+                int len11 = readLength(byteBuf, compact);
                 byte[] a1a = new byte[len11];
                 byteBuf.readBytes(a1a);
                 return a1a;
             case 12:
-                int len12 = byteBuf.readInt();
+                int len12 = readLength(byteBuf, compact);
                 boolean[] a12 = new boolean[len12];
                 for (int i = 0; i < len12; i++) {
                     a12[i] = byteBuf.readBoolean();
                 }
                 return a12;
             case 13:
-                int len13 = byteBuf.readInt();
-                short[] a13 = new short[len13];
-                for (int i = 0; i < len13; i++) {
-                    a13[i] = byteBuf.readShort();
-                }
-                return a13;
+                return readShorts(byteBuf, compact);
             case 14:
-                int len14 = byteBuf.readInt();
-                int[] a14 = new int[len14];
-                for (int i = 0; i < len14; i++) {
-                    a14[i] = byteBuf.readInt();
-                }
-                return a14;
+                return readInts(byteBuf, compact);
             case 15:
-                int len15 = byteBuf.readInt();
-                long[] a15 = new long[len15];
-                for (int i = 0; i < len15; i++) {
-                    a15[i] = byteBuf.readLong();
-                }
-                return a15;
+                return readLongs(byteBuf, compact);
             case 16:
-                int len16 = byteBuf.readInt();
-                float[] a16 = new float[len16];
-                for (int i = 0; i < len16; i++) {
-                    a16[i] = byteBuf.readFloat();
-                }
-                return a16;
+                return readFloats(byteBuf, compact);
             case 17:
-                int len17 = byteBuf.readInt();
-                double[] a17 = new double[len17];
-                for (int i = 0; i < len17; i++) {
-                    a17[i] = byteBuf.readDouble();
-                }
-                return a17;
+                return readDoubles(byteBuf, compact);
             case 18:
-                int len18 = byteBuf.readInt();
+                int len18 = readLength(byteBuf, compact);
                 String[] a18 = new String[len18];
                 for (int i = 0; i < len18; i++) {
-                    int sLen = byteBuf.readInt();
-                    byte[] sbs = new byte[sLen];
-                    byteBuf.readBytes(sbs);
-                    a18[i] = new String(sbs, StandardCharsets.UTF_8);
+                    a18[i] = readString(byteBuf, compact);
                 }
                 return a18;
             case 19:
-                int len19 = byteBuf.readInt();
-                char[] a19 = new char[len19];
-                for (int i = 0; i < len19; i++) {
-                    a19[i] = byteBuf.readChar();
-                }
-                return a19;
+                return readChars(byteBuf, compact);
             case 21:
-                int len21 = byteBuf.readInt();
+                int len21 = readLength(byteBuf, compact);
                 Byte[] a21 = new Byte[len21];
                 for (int i = 0; i < len21; i++) {
                     a21[i] = byteBuf.readByte();
                 }
                 return a21;
             case 22:
-                int len22 = byteBuf.readInt();
+                int len22 = readLength(byteBuf, compact);
                 Boolean[] a22 = new Boolean[len22];
                 for (int i = 0; i < len22; i++) {
                     a22[i] = byteBuf.readBoolean();
                 }
                 return a22;
             case 23:
-                int len23 = byteBuf.readInt();
-                Short[] a23 = new Short[len23];
-                for (int i = 0; i < len23; i++) {
-                    a23[i] = byteBuf.readShort();
+                short[] p23 = readShorts(byteBuf, compact);
+                Short[] a23 = new Short[p23.length];
+                for (int i = 0; i < p23.length; i++) {
+                    a23[i] = p23[i];
                 }
                 return a23;
             case 24:
-                int len24 = byteBuf.readInt();
-                Integer[] a24 = new Integer[len24];
-                for (int i = 0; i < len24; i++) {
-                    a24[i] = byteBuf.readInt();
+                int[] p24 = readInts(byteBuf, compact);
+                Integer[] a24 = new Integer[p24.length];
+                for (int i = 0; i < p24.length; i++) {
+                    a24[i] = p24[i];
                 }
                 return a24;
             case 25:
-                int len25 = byteBuf.readInt();
-                Long[] a25 = new Long[len25];
-                for (int i = 0; i < len25; i++) {
-                    a25[i] = byteBuf.readLong();
+                long[] p25 = readLongs(byteBuf, compact);
+                Long[] a25 = new Long[p25.length];
+                for (int i = 0; i < p25.length; i++) {
+                    a25[i] = p25[i];
                 }
                 return a25;
             case 26:
-                int len26 = byteBuf.readInt();
-                Float[] a26 = new Float[len26];
-                for (int i = 0; i < len26; i++) {
-                    a26[i] = byteBuf.readFloat();
+                float[] p26 = readFloats(byteBuf, compact);
+                Float[] a26 = new Float[p26.length];
+                for (int i = 0; i < p26.length; i++) {
+                    a26[i] = p26[i];
                 }
                 return a26;
             case 27:
-                int len27 = byteBuf.readInt();
-                Double[] a27 = new Double[len27];
-                for (int i = 0; i < len27; i++) {
-                    a27[i] = byteBuf.readDouble();
+                double[] p27 = readDoubles(byteBuf, compact);
+                Double[] a27 = new Double[p27.length];
+                for (int i = 0; i < p27.length; i++) {
+                    a27[i] = p27[i];
                 }
                 return a27;
             case 29:
-                int len29 = byteBuf.readInt();
-                Character[] a29 = new Character[len29];
-                for (int i = 0; i < len29; i++) {
-                    a29[i] = byteBuf.readChar();
+                char[] p29 = readChars(byteBuf, compact);
+                Character[] a29 = new Character[p29.length];
+                for (int i = 0; i < p29.length; i++) {
+                    a29[i] = p29[i];
                 }
                 return a29;
+            case NativeTypes.array_list, NativeTypes.linked_list, NativeTypes.hash_set, NativeTypes.linked_hash_set,
+                 NativeTypes.tree_set, NativeTypes.hash_map, NativeTypes.linked_hash_map, NativeTypes.tree_map,
+                 NativeTypes.concurrent_hash_map, NativeTypes.optional, NativeTypes.enum_ordinal, NativeTypes.record,
+                 NativeTypes.type_codec:
+                return NativeTypes.read(type, byteBuf, serializer, compact);
             default:
-                int len100 = byteBuf.readInt();
+                int len100 = readLength(byteBuf, compact);
+                if (serializer instanceof StreamSerializer<Object> ss) {
+                    try (ByteBufInputStream in = new ByteBufInputStream(byteBuf.readSlice(len100))) {
+                        return ss.deserialize(in);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
                 byte[] bbs = new byte[len100];
                 byteBuf.readBytes(bbs);
                 return serializer.deserialize(bbs);
         }
     }
 
-    static Method getMethod(Class<?> clazz, String methodName, Class<?>... paramTypes) {
-        for (Class<?> cls = clazz; cls != Object.class; cls = cls.getSuperclass()) {
-            try {
-                Method[] methods = cls.getDeclaredMethods();
-                for (Method m : methods) {
-                    if (!m.getName().equals(methodName)) continue;
-                    Class<?>[] parameterTypes = m.getParameterTypes();
-                    if (parameterTypes.length != paramTypes.length) continue;
-                    boolean match = true;
-                    for (int i = 0; i < paramTypes.length; i++) {
-                        Class<?> paramType = paramTypes[i];
-                        if (parameterTypes[i] != paramType) {
-                            if (parameterTypes[i] == int.class && paramType == Integer.class)
-                                continue;
-                            if (parameterTypes[i] == long.class && paramType == Long.class)
-                                continue;
-                            if (parameterTypes[i] == float.class && paramType == Float.class)
-                                continue;
-                            if (parameterTypes[i] == double.class && paramType == Double.class)
-                                continue;
-                            if (parameterTypes[i] == boolean.class && paramType == Boolean.class)
-                                continue;
-                            if (parameterTypes[i] == byte.class && paramType == Byte.class)
-                                continue;
-                            if (parameterTypes[i] == short.class && paramType == Short.class)
-                                continue;
-                            if (parameterTypes[i] == char.class && paramType == Character.class)
-                                continue;
-                            match = false;
-                            break;
-                        }
-                    }
-                    if (match) {
-                        return m;
-                    }
-                }
-            } catch (SecurityException e) {
-                //错误后直接循环，从父类中获取
+    /**
+     * 写入无符号变长int，LEB128编码，每字节低7位为数据，最高位表示后续是否还有字节
+     *
+     * @param buf   字节缓冲区
+     * @param value 数据
+     */
+    static void writeVarInt(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    /**
+     * 读取无符号变长int
+     *
+     * @param buf 字节缓冲区
+     * @return 数据
+     */
+    static int readVarInt(ByteBuf buf) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buf.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("变长int数据格式错误");
+    }
+
+    /**
+     * 写入无符号变长long，LEB128编码
+     *
+     * @param buf   字节缓冲区
+     * @param value 数据
+     */
+    static void writeVarLong(ByteBuf buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    /**
+     * 读取无符号变长long
+     *
+     * @param buf 字节缓冲区
+     * @return 数据
+     */
+    static long readVarLong(ByteBuf buf) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("变长long数据格式错误");
+    }
+
+    /**
+     * 在指定位置回填固定5字节的无符号变长int，高位以0x80补齐，{@link #readVarInt(ByteBuf)}可正常读取
+     *
+     * @param buf   字节缓冲区
+     * @param index 预留的5字节起始位置
+     * @param value 数据
+     */
+    static void setPaddedVarInt(ByteBuf buf, int index, int value) {
+        for (int i = 0; i < 4; i++) {
+            buf.setByte(index + i, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.setByte(index + 4, value);
+    }
+
+    /**
+     * 写入长度，紧凑编码时为无符号变长int，否则为4字节int
+     */
+    static void writeLength(ByteBuf buf, int length, boolean compact) {
+        if (compact) {
+            writeVarInt(buf, length);
+        } else {
+            buf.writeInt(length);
+        }
+    }
+
+    static int readLength(ByteBuf buf, boolean compact) {
+        return compact ? readVarInt(buf) : buf.readInt();
+    }
+
+    /**
+     * 写入short，紧凑编码时为zig-zag变长int
+     */
+    static void writeShort(ByteBuf buf, short value, boolean compact) {
+        if (compact) {
+            writeVarInt(buf, (value << 1) ^ (value >> 31));
+        } else {
+            buf.writeShort(value);
+        }
+    }
+
+    static short readShort(ByteBuf buf, boolean compact) {
+        if (compact) {
+            int v = readVarInt(buf);
+            return (short) ((v >>> 1) ^ -(v & 1));
+        }
+        return buf.readShort();
+    }
+
+    /**
+     * 写入int，紧凑编码时为zig-zag变长int
+     */
+    static void writeInt(ByteBuf buf, int value, boolean compact) {
+        if (compact) {
+            writeVarInt(buf, (value << 1) ^ (value >> 31));
+        } else {
+            buf.writeInt(value);
+        }
+    }
+
+    static int readInt(ByteBuf buf, boolean compact) {
+        if (compact) {
+            int v = readVarInt(buf);
+            return (v >>> 1) ^ -(v & 1);
+        }
+        return buf.readInt();
+    }
+
+    /**
+     * 写入long，紧凑编码时为zig-zag变长long
+     */
+    static void writeLong(ByteBuf buf, long value, boolean compact) {
+        if (compact) {
+            writeVarLong(buf, (value << 1) ^ (value >> 63));
+        } else {
+            buf.writeLong(value);
+        }
+    }
+
+    static long readLong(ByteBuf buf, boolean compact) {
+        if (compact) {
+            long v = readVarLong(buf);
+            return (v >>> 1) ^ -(v & 1);
+        }
+        return buf.readLong();
+    }
+
+    /**
+     * 写入char，紧凑编码时为无符号变长int
+     */
+    static void writeChar(ByteBuf buf, char value, boolean compact) {
+        if (compact) {
+            writeVarInt(buf, value);
+        } else {
+            buf.writeChar(value);
+        }
+    }
+
+    static char readChar(ByteBuf buf, boolean compact) {
+        return compact ? (char) readVarInt(buf) : buf.readChar();
+    }
+
+    /**
+     * 批量写入的最小元素数量，元素较少时逐个写入更快
+     */
+    private static final int bulk_threshold = 16;
+
+    /**
+     * 校验剩余可读字节是否足够，避免恶意长度导致超大数组分配
+     */
+    private static int checkArrayBytes(ByteBuf buf, int length, int shift) {
+        long bytes = (long) length << shift;
+        if (length < 0 || bytes > buf.readableBytes()) {
+            throw new IndexOutOfBoundsException("数组长度超出可读字节：" + length);
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * 写入short数组，结构为：长度+元素，定长编码时经由ByteBuf的NIO视图以大端字节序批量写入
+     */
+    static void writeShorts(ByteBuf buf, short[] a, boolean compact) {
+        writeLength(buf, a.length, compact);
+        if (compact) {
+            for (short v : a) {
+                writeShort(buf, v, true);
+            }
+            return;
+        }
+        int bytes = a.length << 1;
+        if (a.length >= bulk_threshold && buf.ensureWritable(bytes).nioBufferCount() == 1) {
+            //单一内存区域时NIO视图与ByteBuf共享内存，可直接批量写入
+            int writerIndex = buf.writerIndex();
+            buf.nioBuffer(writerIndex, bytes).order(ByteOrder.BIG_ENDIAN).asShortBuffer().put(a);
+            buf.writerIndex(writerIndex + bytes);
+        } else {
+            for (short v : a) {
+                buf.writeShort(v);
+            }
+        }
+    }
+
+    /**
+     * 读取short数组
+     */
+    static short[] readShorts(ByteBuf buf, boolean compact) {
+        int length = readLength(buf, compact);
+        if (compact) {
+            checkArrayBytes(buf, length, 0);
+            short[] a = new short[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = readShort(buf, true);
             }
+            return a;
         }
-        return null;
+        int bytes = checkArrayBytes(buf, length, 1);
+        short[] a = new short[length];
+        buf.nioBuffer(buf.readerIndex(), bytes).order(ByteOrder.BIG_ENDIAN).asShortBuffer().get(a);
+        buf.skipBytes(bytes);
+        return a;
+    }
+
+    /**
+     * 写入int数组，结构为：长度+元素，定长编码时经由ByteBuf的NIO视图以大端字节序批量写入
+     */
+    static void writeInts(ByteBuf buf, int[] a, boolean compact) {
+        writeLength(buf, a.length, compact);
+        if (compact) {
+            for (int v : a) {
+                writeInt(buf, v, true);
+            }
+            return;
+        }
+        int bytes = a.length << 2;
+        if (a.length >= bulk_threshold && buf.ensureWritable(bytes).nioBufferCount() == 1) {
+            //单一内存区域时NIO视图与ByteBuf共享内存，可直接批量写入
+            int writerIndex = buf.writerIndex();
+            buf.nioBuffer(writerIndex, bytes).order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(a);
+            buf.writerIndex(writerIndex + bytes);
+        } else {
+            for (int v : a) {
+                buf.writeInt(v);
+            }
+        }
+    }
+
+    /**
+     * 读取int数组
+     */
+    static int[] readInts(ByteBuf buf, boolean compact) {
+        int length = readLength(buf, compact);
+        if (compact) {
+            checkArrayBytes(buf, length, 0);
+            int[] a = new int[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = readInt(buf, true);
+            }
+            return a;
+        }
+        int bytes = checkArrayBytes(buf, length, 2);
+        int[] a = new int[length];
+        buf.nioBuffer(buf.readerIndex(), bytes).order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(a);
+        buf.skipBytes(bytes);
+        return a;
+    }
+
+    /**
+     * 写入long数组，结构为：长度+元素，定长编码时经由ByteBuf的NIO视图以大端字节序批量写入
+     */
+    static void writeLongs(ByteBuf buf, long[] a, boolean compact) {
+        writeLength(buf, a.length, compact);
+        if (compact) {
+            for (long v : a) {
+                writeLong(buf, v, true);
+            }
+            return;
+        }
+        int bytes = a.length << 3;
+        if (a.length >= bulk_threshold && buf.ensureWritable(bytes).nioBufferCount() == 1) {
+            //单一内存区域时NIO视图与ByteBuf共享内存，可直接批量写入
+            int writerIndex = buf.writerIndex();
+            buf.nioBuffer(writerIndex, bytes).order(ByteOrder.BIG_ENDIAN).asLongBuffer().put(a);
+            buf.writerIndex(writerIndex + bytes);
+        } else {
+            for (long v : a) {
+                buf.writeLong(v);
+            }
+        }
+    }
+
+    /**
+     * 读取long数组
+     */
+    static long[] readLongs(ByteBuf buf, boolean compact) {
+        int length = readLength(buf, compact);
+        if (compact) {
+            checkArrayBytes(buf, length, 0);
+            long[] a = new long[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = readLong(buf, true);
+            }
+            return a;
+        }
+        int bytes = checkArrayBytes(buf, length, 3);
+        long[] a = new long[length];
+        buf.nioBuffer(buf.readerIndex(), bytes).order(ByteOrder.BIG_ENDIAN).asLongBuffer().get(a);
+        buf.skipBytes(bytes);
+        return a;
+    }
+
+    /**
+     * 写入float数组，结构为：长度+元素，定长编码时经由ByteBuf的NIO视图以大端字节序批量写入
+     */
+    static void writeFloats(ByteBuf buf, float[] a, boolean compact) {
+        writeLength(buf, a.length, compact);
+        int bytes = a.length << 2;
+        if (a.length >= bulk_threshold && buf.ensureWritable(bytes).nioBufferCount() == 1) {
+            //单一内存区域时NIO视图与ByteBuf共享内存，可直接批量写入
+            int writerIndex = buf.writerIndex();
+            buf.nioBuffer(writerIndex, bytes).order(ByteOrder.BIG_ENDIAN).asFloatBuffer().put(a);
+            buf.writerIndex(writerIndex + bytes);
+        } else {
+            for (float v : a) {
+                buf.writeFloat(v);
+            }
+        }
+    }
+
+    /**
+     * 读取float数组
+     */
+    static float[] readFloats(ByteBuf buf, boolean compact) {
+        int length = readLength(buf, compact);
+        int bytes = checkArrayBytes(buf, length, 2);
+        float[] a = new float[length];
+        buf.nioBuffer(buf.readerIndex(), bytes).order(ByteOrder.BIG_ENDIAN).asFloatBuffer().get(a);
+        buf.skipBytes(bytes);
+        return a;
+    }
+
+    /**
+     * 写入double数组，结构为：长度+元素，定长编码时经由ByteBuf的NIO视图以大端字节序批量写入
+     */
+    static void writeDoubles(ByteBuf buf, double[] a, boolean compact) {
+        writeLength(buf, a.length, compact);
+        int bytes = a.length << 3;
+        if (a.length >= bulk_threshold && buf.ensureWritable(bytes).nioBufferCount() == 1) {
+            //单一内存区域时NIO视图与ByteBuf共享内存，可直接批量写入
+            int writerIndex = buf.writerIndex();
+            buf.nioBuffer(writerIndex, bytes).order(ByteOrder.BIG_ENDIAN).asDoubleBuffer().put(a);
+            buf.writerIndex(writerIndex + bytes);
+        } else {
+            for (double v : a) {
+                buf.writeDouble(v);
+            }
+        }
+    }
+
+    /**
+     * 读取double数组
+     */
+    static double[] readDoubles(ByteBuf buf, boolean compact) {
+        int length = readLength(buf, compact);
+        int bytes = checkArrayBytes(buf, length, 3);
+        double[] a = new double[length];
+        buf.nioBuffer(buf.readerIndex(), bytes).order(ByteOrder.BIG_ENDIAN).asDoubleBuffer().get(a);
+        buf.skipBytes(bytes);
+        return a;
+    }
+
+    /**
+     * 写入char数组，结构为：长度+元素，定长编码时经由ByteBuf的NIO视图以大端字节序批量写入
+     */
+    static void writeChars(ByteBuf buf, char[] a, boolean compact) {
+        writeLength(buf, a.length, compact);
+        if (compact) {
+            for (char v : a) {
+                writeChar(buf, v, true);
+            }
+            return;
+        }
+        int bytes = a.length << 1;
+        if (a.length >= bulk_threshold && buf.ensureWritable(bytes).nioBufferCount() == 1) {
+            //单一内存区域时NIO视图与ByteBuf共享内存，可直接批量写入
+            int writerIndex = buf.writerIndex();
+            buf.nioBuffer(writerIndex, bytes).order(ByteOrder.BIG_ENDIAN).asCharBuffer().put(a);
+            buf.writerIndex(writerIndex + bytes);
+        } else {
+            for (char v : a) {
+                buf.writeChar(v);
+            }
+        }
+    }
+
+    /**
+     * 读取char数组
+     */
+    static char[] readChars(ByteBuf buf, boolean compact) {
+        int length = readLength(buf, compact);
+        if (compact) {
+            checkArrayBytes(buf, length, 0);
+            char[] a = new char[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = readChar(buf, true);
+            }
+            return a;
+        }
+        int bytes = checkArrayBytes(buf, length, 1);
+        char[] a = new char[length];
+        buf.nioBuffer(buf.readerIndex(), bytes).order(ByteOrder.BIG_ENDIAN).asCharBuffer().get(a);
+        buf.skipBytes(bytes);
+        return a;
     }
 
     /**
@@ -447,19 +972,4 @@ final class Utils {
         }
         return allMethods;
     }
-
-    static Method findMethod(Class<?> clazz, String methodName, Object[] params) {
-        try {
-            if (params != null) {
-                Class<?>[] paramTypes = new Class<?>[params.length];
-                for (int i = 0; i < params.length; i++) {
-                    paramTypes[i] = params[i].getClass();
-                }
-                return getMethod(clazz, methodName, paramTypes);
-            }
-            return ReflectUtils.getDeclaredMethod(clazz, methodName);
-        } catch (Exception ignored) {
-            return null;
-        }
-    }
 }
@@ -0,0 +1,63 @@
+package com.kaka.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 压缩基准测试：以结构重复的文本数据包经 {@link CompressionCodec} 编码后再解码，输出压缩比及往返耗时 <br>
+ * 直接运行main方法，无需启动服务端
+ *
+ * @author zkpursuit
+ */
+public class CompressionBenchmark {
+
+    public static void main(String[] args) {
+        for (int size : new int[]{256, 2048, 16384, 131072}) {
+            ByteBuf payload = payload(size);
+            int n = Math.max(200, 20_000_000 / size);
+            double ratio = 0;
+            long nanos = 0;
+            for (int r = 0; r < 3; r++) {
+                EmbeddedChannel sender = new EmbeddedChannel(new CompressionCodec(128, 16 * 1024 * 1024));
+                EmbeddedChannel receiver = new EmbeddedChannel(new CompressionCodec(128, 16 * 1024 * 1024));
+                sender.pipeline().get(CompressionCodec.class).enable();
+                long wire = 0;
+                long t0 = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    sender.writeOutbound(payload.retainedDuplicate());
+                    ByteBuf compressed = sender.readOutbound();
+                    wire += compressed.readableBytes();
+                    receiver.writeInbound(compressed);
+                    ByteBuf restored = receiver.readInbound();
+                    if (!ByteBufUtil.equals(restored, payload)) throw new IllegalStateException("round trip mismatch");
+                    restored.release();
+                }
+                nanos = (System.nanoTime() - t0) / n;
+                ratio = (double) wire / ((long) size * n);
+                sender.finishAndReleaseAll();
+                receiver.finishAndReleaseAll();
+            }
+            payload.release();
+            System.out.printf("payload=%d wire/original=%.2f round-trip=%dns%n", size, ratio, nanos);
+        }
+    }
+
+    /**
+     * 结构重复、字段值各异的文本，近似序列化后的对象列表
+     */
+    private static ByteBuf payload(int size) {
+        StringBuilder text = new StringBuilder(size + 64);
+        for (int i = 0; text.length() < size; i++) {
+            text.append("{\"id\":").append(100000 + i * 7)
+                    .append(",\"name\":\"player-").append(i % 97)
+                    .append("\",\"level\":").append(i % 60)
+                    .append(",\"online\":").append(i % 3 == 0).append('}');
+        }
+        byte[] bytes = text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+        return Unpooled.wrappedBuffer(bytes);
+    }
+}
@@ -0,0 +1,67 @@
+package com.kaka.rpc.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import java.util.function.Supplier;
+
+/**
+ * 长度头编码基准测试：对比复制数据包、仅分配长度头以及 {@link LengthDataEncoder} 按默认阈值选择两者的编码方式 <br>
+ * 直接运行main方法，无需启动服务端
+ *
+ * @author zkpursuit
+ */
+public class LengthEncoderBenchmark {
+
+    /**
+     * 复制数据包的编码方式，即改为仅分配长度头之前的实现
+     */
+    static class CopyingLengthDataEncoder extends MessageToByteEncoder<ByteBuf> {
+        @Override
+        protected void encode(ChannelHandlerContext ctx, ByteBuf msg, ByteBuf out) {
+            out.writeInt(msg.readableBytes());
+            out.writeBytes(msg);
+        }
+    }
+
+    public static void main(String[] args) {
+        for (int size : new int[]{64, 1024, 4096, 8192, 16384, 65536, 262144}) {
+            int n = size > 100000 ? 5000 : size > 10000 ? 50000 : 200000;
+            long copying = 0, header = 0, threshold = 0;
+            for (int r = 0; r < 3; r++) {
+                copying = run(CopyingLengthDataEncoder::new, size, n);
+                header = run(() -> new LengthDataEncoder(0), size, n);
+                threshold = run(LengthDataEncoder::new, size, n);
+            }
+            System.out.printf("payload=%d copying=%dns header-only=%dns default=%dns%n", size, copying, header, threshold);
+        }
+    }
+
+    /**
+     * @return 平均每个数据包的编码纳秒数
+     */
+    private static long run(Supplier<ChannelHandler> encoder, int size, int n) {
+        EmbeddedChannel channel = new EmbeddedChannel(encoder.get());
+        channel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+        ByteBuf payload = PooledByteBufAllocator.DEFAULT.directBuffer(size).writeZero(size);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            channel.writeOutbound(payload.retainedDuplicate());
+            long bytes = 0;
+            ByteBuf out;
+            while ((out = channel.readOutbound()) != null) {
+                bytes += out.readableBytes();
+                out.release();
+            }
+            if (bytes != size + 4) throw new IllegalStateException("unexpected frame length " + bytes);
+        }
+        long nanos = System.nanoTime() - t0;
+        payload.release();
+        channel.finishAndReleaseAll();
+        return nanos / n;
+    }
+}
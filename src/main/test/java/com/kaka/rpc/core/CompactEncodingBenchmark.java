@@ -0,0 +1,74 @@
+package com.kaka.rpc.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * 紧凑编码基准测试：对比默认编码与紧凑编码下一组小参数调用的编码字节数及编解码耗时 <br>
+ * 直接运行main方法，无需启动服务端
+ *
+ * @author zkpursuit
+ */
+public class CompactEncodingBenchmark {
+
+    private static final int batch = 1000;
+    private static final Object[][] calls = {
+            {1, 2},
+            {"hello"},
+            {100L, "abc"},
+            {true, 3.5},
+            {new int[]{1, 2, 3}},
+            {(short) 7, 'x'},
+            {123456789L}
+    };
+
+    public static void main(String[] args) {
+        int rounds = 5, iterations = 2_000_000;
+        for (int r = 0; r < rounds; r++) {
+            boolean last = r == rounds - 1;
+            for (boolean compact : new boolean[]{false, true}) {
+                double[] result = run(compact, iterations);
+                if (last) {
+                    System.out.printf("%-7s bytes/call=%.1f encode=%.1fns decode=%.1fns%n",
+                            compact ? "compact" : "default", result[0], result[1], result[2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 每批编码 {@link #batch} 次调用的参数后再依次解码，按批计时以摊薄计时本身的开销
+     *
+     * @return 平均每次调用的参数字节数、编码纳秒数、解码纳秒数
+     */
+    private static double[] run(boolean compact, int iterations) {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(batch * 64);
+        long bytes = 0, encodeNanos = 0, decodeNanos = 0, decoded = 0;
+        for (int i = 0; i < iterations; i += batch) {
+            buf.clear();
+            long t0 = System.nanoTime();
+            for (int j = 0; j < batch; j++) {
+                for (Object param : calls[j % calls.length]) {
+                    Utils.writeValue(buf, param, RpcInvokeHandler.serializer, compact, false);
+                }
+            }
+            long t1 = System.nanoTime();
+            bytes += buf.readableBytes();
+            while (buf.isReadable()) {
+                if (Utils.readValue(buf, RpcInvokeHandler.serializer, compact) != null) decoded++;
+            }
+            long t2 = System.nanoTime();
+            encodeNanos += t1 - t0;
+            decodeNanos += t2 - t1;
+        }
+        buf.release();
+        if (decoded != countParams(iterations)) throw new IllegalStateException("decode mismatch");
+        return new double[]{(double) bytes / iterations, (double) encodeNanos / iterations, (double) decodeNanos / iterations};
+    }
+
+    private static long countParams(int iterations) {
+        long n = 0;
+        for (int i = 0; i < iterations; i++) n += calls[i % batch % calls.length].length;
+        return n;
+    }
+}
@@ -0,0 +1,75 @@
+package com.kaka.rpc.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 业务执行方式基准测试：以阻塞20毫秒的任务模拟访问数据库等外部服务的处理器，
+ * 对比固定300线程的线程池、每个请求一个虚拟线程、每个连接一个虚拟线程（{@link SerialExecutor}）的吞吐量 <br>
+ * 直接运行main方法，无需启动服务端
+ *
+ * @author zkpursuit
+ */
+public class ExecuteModeBenchmark {
+
+    private static final int blockMillis = 20;
+
+    public static void main(String[] args) throws Exception {
+        int n = 30000, connections = 1000;
+        ExecutorService fixed = Executors.newFixedThreadPool(300);
+        ExecutorService perRequest = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
+        run(fixed, 3000);
+        run(perRequest, 3000);
+        long fixedMillis = run(fixed, n);
+        long perRequestMillis = run(perRequest, n);
+        System.out.printf("thread pool(300): %d ms, %.0f req/s%n", fixedMillis, n * 1000.0 / fixedMillis);
+        System.out.printf("virtual thread per request: %d ms, %.0f req/s%n", perRequestMillis, n * 1000.0 / perRequestMillis);
+
+        ExecutorService underlying = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
+        SerialExecutor[] executors = new SerialExecutor[connections];
+        for (int i = 0; i < connections; i++) executors[i] = new SerialExecutor(underlying);
+        int[] next = new int[connections];
+        boolean[] outOfOrder = {false};
+        CountDownLatch latch = new CountDownLatch(n);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            int conn = i % connections, seq = i / connections;
+            executors[conn].execute(() -> {
+                if (next[conn] != seq) outOfOrder[0] = true;
+                next[conn] = seq + 1;
+                block();
+                latch.countDown();
+            });
+        }
+        latch.await();
+        long perConnectionMillis = (System.nanoTime() - t0) / 1_000_000;
+        System.out.printf("virtual thread per connection(%d): %d ms, %.0f req/s, ordered=%b%n",
+                connections, perConnectionMillis, n * 1000.0 / perConnectionMillis, !outOfOrder[0]);
+        fixed.shutdown();
+        perRequest.shutdown();
+        underlying.shutdown();
+    }
+
+    private static long run(Executor executor, int n) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(n);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            executor.execute(() -> {
+                block();
+                latch.countDown();
+            });
+        }
+        latch.await();
+        return (System.nanoTime() - t0) / 1_000_000;
+    }
+
+    private static void block() {
+        try {
+            Thread.sleep(blockMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.kaka.rpc.core;
+
+import com.kaka.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 方法执行基准测试：对比反射调用与 {@link MethodInvoker} 预编译方法句柄调用的耗时，
+ * 以及 {@link RemotingMethodTable} 以接口ID与方法ID两级查表与按下标读取数组的耗时 <br>
+ * 直接运行main方法，无需启动服务端
+ *
+ * @author zkpursuit
+ */
+public class MethodInvokerBenchmark {
+
+    public interface Calculator {
+        int add(int a, int b);
+    }
+
+    static class CalculatorImpl implements Calculator {
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Method method = Calculator.class.getMethod("add", int.class, int.class);
+        MethodInvoker invoker = new MethodInvoker(method);
+        Calculator target = new CalculatorImpl();
+        Object[] params = {1, 2};
+        int n = 20_000_000;
+        for (int round = 0; round < 5; round++) {
+            long sum = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) sum += (Integer) method.invoke(target, params);
+            long t1 = System.nanoTime();
+            for (int i = 0; i < n; i++) sum += (Integer) invoker.invoke(target, params);
+            long t2 = System.nanoTime();
+            System.out.printf("reflect=%.2fns handle=%.2fns (%d)%n", (t1 - t0) / (double) n, (t2 - t1) / (double) n, sum);
+        }
+
+        long interfaceId = StringUtils.toNumber(Calculator.class.getName());
+        RemotingMethodTable.register(Calculator.class, interfaceId);
+        long methodId = 0;
+        for (Map.Entry<Long, Method> e : Utils.getAllMethods(Calculator.class).entrySet()) {
+            if (e.getValue().equals(method)) methodId = e.getKey();
+        }
+        long[] methodIds = new long[1024]; //请求中的方法ID
+        int[] indexes = new int[1024]; //按下标编号时请求中的下标
+        Arrays.fill(methodIds, methodId);
+        RemotingMethodTable.Entry[] dense = {RemotingMethodTable.get(interfaceId, methodId)}; //按下标编号的稠密表
+        for (int round = 0; round < 5; round++) {
+            long hits = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < n; i++) if (RemotingMethodTable.get(interfaceId, methodIds[i & 1023]) != null) hits++;
+            long t1 = System.nanoTime();
+            for (int i = 0; i < n; i++) if (dense[indexes[i & 1023]] != null) hits++;
+            long t2 = System.nanoTime();
+            System.out.printf("hashLookup=%.2fns denseLookup=%.2fns (%d)%n", (t1 - t0) / (double) n, (t2 - t1) / (double) n, hits);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.kaka.notice.FacadeFactory;
 import com.kaka.rpc.core.NettyServer;
 import com.kaka.rpc.RemotingServiceDetector;
 import com.kaka.util.ResourceUtils;
+import com.test.MyOpCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +72,9 @@ public class DemoSingleServer extends Startup {
     // 单体服务
     private static void singleServer() {
         NettyServer socketServer = new NettyServer(new DemoProtocolPreHandler()); // DemoProtocolPreHandler 用于登录鉴权
+        //心跳在IO线程中直接处理，不与业务请求排队，避免负载高时心跳超时断线
+        socketServer.setPriority(Integer.parseInt(MyOpCode.heart_beat), NettyServer.Priority.INLINE);
+        socketServer.setPriority(MyOpCode.heart_beat, NettyServer.Priority.INLINE);
         int ioPoolSize = Runtime.getRuntime().availableProcessors() * 2;
         socketServer.start(new InetSocketAddress(7777), ioPoolSize, 300, 7000, 3000, 0);
     }
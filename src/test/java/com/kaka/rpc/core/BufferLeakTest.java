@@ -0,0 +1,193 @@
+package com.kaka.rpc.core;
+
+import com.kaka.notice.Command;
+import com.kaka.notice.Facade;
+import com.kaka.notice.FacadeFactory;
+import com.kaka.notice.Message;
+import com.kaka.rpc.codec.ChunkCodec;
+import com.kaka.rpc.codec.CompressionCodec;
+import com.kaka.rpc.codec.LengthDataDecoder;
+import com.kaka.rpc.codec.LengthDataEncoder;
+import io.netty.buffer.AbstractByteBuf;
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.buffer.UnpooledHeapByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ResourceLeakDetector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 编码、解码与分发路径的缓冲区释放测试 <br>
+ * 以PARANOID级别跟踪全部缓冲区并监听泄漏报告，同时记录分配的每个缓冲区，断言处理完毕后引用计数均为0
+ *
+ * @author zkpursuit
+ */
+public class BufferLeakTest {
+
+    /**
+     * 记录分配的每个缓冲区
+     */
+    static final class TrackingAllocator extends AbstractByteBufAllocator {
+        final Queue<ByteBuf> allocated = new ConcurrentLinkedQueue<>();
+
+        TrackingAllocator() {
+            super(false);
+        }
+
+        @Override
+        public boolean isDirectBufferPooled() {
+            return false;
+        }
+
+        @Override
+        protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+            return track(new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity));
+        }
+
+        @Override
+        protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+            return track(new UnpooledDirectByteBuf(this, initialCapacity, maxCapacity));
+        }
+
+        @Override
+        public CompositeByteBuf compositeHeapBuffer(int maxNumComponents) {
+            return track(super.compositeHeapBuffer(maxNumComponents));
+        }
+
+        @Override
+        public CompositeByteBuf compositeDirectBuffer(int maxNumComponents) {
+            return track(super.compositeDirectBuffer(maxNumComponents));
+        }
+
+        private <T extends ByteBuf> T track(T buf) {
+            allocated.add(buf);
+            return buf;
+        }
+
+        long unreleased() {
+            return allocated.stream().filter(buf -> buf.refCnt() != 0).count();
+        }
+    }
+
+    /**
+     * 不释放数据包的处理器，模拟未继承 {@link RpcMessageHandler} 的业务处理器
+     */
+    public static class HoldingCommand extends Command {
+        static final CountDownLatch executed = new CountDownLatch(1);
+
+        @Override
+        public void execute(Message message) {
+            executed.countDown();
+        }
+    }
+
+    private static final int holding_opcode = 0x7ff00001;
+    private static final List<String> leaks = new CopyOnWriteArrayList<>();
+    private static ResourceLeakDetector.Level previousLevel;
+
+    @BeforeAll
+    @SuppressWarnings("unchecked")
+    static void enableLeakDetection() throws ReflectiveOperationException {
+        previousLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        Field field = AbstractByteBuf.class.getDeclaredField("leakDetector");
+        field.setAccessible(true);
+        ((ResourceLeakDetector<ByteBuf>) field.get(null)).setLeakListener((type, records) -> leaks.add(type + records));
+    }
+
+    @AfterAll
+    static void assertNoLeakReported() throws InterruptedException {
+        //泄漏在缓冲区被回收后的下次跟踪时报告
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+            UnpooledByteBufAllocator.DEFAULT.heapBuffer(8).release();
+        }
+        ResourceLeakDetector.setLevel(previousLevel);
+        assertTrue(leaks.isEmpty(), () -> String.join("\n", leaks));
+    }
+
+    @Test
+    void codecsReleaseEveryBuffer() {
+        TrackingAllocator alloc = new TrackingAllocator();
+        ChunkCodec senderChunk = new ChunkCodec(256, 1 << 20);
+        senderChunk.enable();
+        CompressionCodec senderCompression = new CompressionCodec(64, 1 << 20);
+        senderCompression.enable();
+        EmbeddedChannel sender = new EmbeddedChannel();
+        sender.config().setAllocator(alloc);
+        sender.pipeline().addLast(new LengthDataEncoder(), senderChunk, senderCompression);
+        EmbeddedChannel receiver = new EmbeddedChannel();
+        receiver.config().setAllocator(alloc);
+        receiver.pipeline().addLast(new LengthDataDecoder(1024), new ChunkCodec(256, 1 << 20), new CompressionCodec(64, 1 << 20));
+
+        Random random = new Random(7);
+        byte[] random4k = new byte[4096];
+        random.nextBytes(random4k);
+        byte[] text64k = new byte[64 * 1024];
+        for (int i = 0; i < text64k.length; i++) {
+            text64k[i] = (byte) ('a' + random.nextInt(4));
+        }
+        byte[][] payloads = {new byte[10], "{\"id\":1,\"name\":\"kaka\"}".repeat(200).getBytes(), random4k, text64k};
+        for (byte[] payload : payloads) {
+            sender.writeOutbound(alloc.buffer(payload.length).writeBytes(payload));
+            for (ByteBuf frame; (frame = sender.readOutbound()) != null; ) {
+                receiver.writeInbound(frame);
+            }
+            ByteBuf received = receiver.readInbound();
+            try {
+                assertArrayEquals(payload, ByteBufUtil.getBytes(received));
+            } finally {
+                received.release();
+            }
+            assertNull(receiver.readInbound());
+        }
+        assertFalse(sender.finish());
+        assertFalse(receiver.finish());
+        assertEquals(0, alloc.unreleased());
+    }
+
+    @Test
+    void threadPoolDispatchReleasesBody() throws InterruptedException {
+        Facade facade = FacadeFactory.getFacade();
+        facade.initThreadPool(Executors.newFixedThreadPool(2)); //THREAD_POOL方式由领域事件总线的线程池执行
+        facade.registerCommand(holding_opcode, HoldingCommand.class);
+        facade.registerCommand(RpcDispatchCommand.cmd, RpcDispatchCommand.class); //由NettyServer启动时注册
+        TrackingAllocator alloc = new TrackingAllocator();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyServerHandler(1)) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("127.0.0.1", 9999); //连接管理器按IP地址绑定连接
+            }
+        };
+        channel.config().setAllocator(alloc);
+        channel.writeInbound(alloc.buffer(12).writeInt(holding_opcode).writeLong(1));
+        assertTrue(HoldingCommand.executed.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (alloc.unreleased() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, alloc.unreleased());
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,135 @@
+package com.kaka.rpc.core;
+
+import com.kaka.rpc.codec.ChunkCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandshakeTest {
+
+    private static Handshake agreed(int capabilities) {
+        return new Handshake(Handshake.protocol_version, capabilities, 1024, 1 << 20, null);
+    }
+
+    private static int countFrames(EmbeddedChannel channel) {
+        int n = 0;
+        for (ByteBuf buf; (buf = channel.readOutbound()) != null; n++) {
+            buf.release();
+        }
+        return n;
+    }
+
+    @Test
+    void chunkingRequiresAgreedCapability() {
+        EmbeddedChannel legacy = new EmbeddedChannel(new ChunkCodec(64, 1 << 20));
+        Handshake.apply(legacy, Handshake.legacy);
+        legacy.writeOutbound(Unpooled.wrappedBuffer(new byte[200]));
+        assertEquals(1, countFrames(legacy));
+
+        EmbeddedChannel withoutChunk = new EmbeddedChannel(new ChunkCodec(64, 1 << 20));
+        Handshake.apply(withoutChunk, agreed(Handshake.cap_compact));
+        withoutChunk.writeOutbound(Unpooled.wrappedBuffer(new byte[200]));
+        assertEquals(1, countFrames(withoutChunk));
+
+        EmbeddedChannel chunked = new EmbeddedChannel(new ChunkCodec(64, 1 << 20));
+        Handshake.apply(chunked, new Handshake(Handshake.protocol_version, Handshake.cap_chunk, 64, 1 << 20, null));
+        chunked.writeOutbound(Unpooled.wrappedBuffer(new byte[200]));
+        assertTrue(countFrames(chunked) > 1);
+    }
+
+    @Test
+    void requestFlagsFollowAgreedCapabilities() {
+        TestClient client = new TestClient();
+        client.setCompact(true);
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        Handshake.apply(channel, agreed(Handshake.cap_structured_error));
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        client.remotingRequest(ctx, 7, "test:event", new Object[]{1});
+        ByteBuf buf = channel.readOutbound();
+        try {
+            assertEquals(RpcInvokeHandler.opcode, buf.readInt());
+            assertEquals(RpcInvokeHandler.flag_binary | RpcInvokeHandler.flag_structured_error, buf.readByte());
+            assertEquals(7, buf.readInt());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void legacyRequestUsesBaselineLayout() {
+        TestClient client = new TestClient();
+        client.setCompact(true);
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        Handshake.apply(channel, Handshake.legacy);
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        client.remotingRequest(ctx, 42, new RpcMethod("a.Service", "call", 1L, 2L), new Object[]{"x", 3});
+        ByteBuf buf = channel.readOutbound();
+        try {
+            assertEquals(RpcInvokeHandler.opcode, buf.readInt());
+            assertEquals("42", buf.readCharSequence(buf.readShort(), StandardCharsets.UTF_8).toString());
+            assertEquals("rpc:a.Service:call:2:1", buf.readCharSequence(buf.readShort(), StandardCharsets.UTF_8).toString());
+            assertEquals(2, buf.readShort());
+            assertEquals(8, buf.readByte());
+            assertEquals("x", buf.readCharSequence(buf.readInt(), StandardCharsets.UTF_8).toString());
+            assertEquals(4, buf.readByte());
+            assertEquals(3, buf.readInt());
+            assertFalse(buf.isReadable());
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 握手应答前连接即可使用，调用以旧版本结构发出并按旧版本结构解析结果；收到应答后以二进制请求头发出
+     */
+    @Test
+    void callsBeforeHandshakeReplyUseBaselineLayout() throws Exception {
+        TestClient client = new TestClient();
+        EmbeddedChannel channel = new EmbeddedChannel(client.buildHandler());
+        ByteBuf handshake = channel.readOutbound();
+        try {
+            assertEquals(RpcOpCode.handshake, handshake.readInt());
+        } finally {
+            handshake.release();
+        }
+        assertTrue(client.isActive());
+
+        CompletableFuture<Object> future = client.execRemotingLogic0("test:event", 5, new Object[]{1});
+        ByteBuf request = channel.readOutbound();
+        try {
+            assertEquals(RpcInvokeHandler.opcode, request.readInt());
+            assertTrue(RpcInvokeHandler.isLegacy(request));
+            assertEquals("1", request.readCharSequence(request.readShort(), StandardCharsets.UTF_8).toString());
+        } finally {
+            request.release();
+        }
+        ByteBuf result = Unpooled.buffer();
+        result.writeInt(NettyClient.cmd_sc_sync_result);
+        Utils.writeShortString(result, "1");
+        Utils.writeShortString(result, "test:event");
+        result.writeByte(0);
+        Utils.writeValue(result, 5, null, false, false);
+        channel.writeInbound(result);
+        assertEquals(5, future.get());
+
+        ByteBuf reply = Handshake.local(false, 2048, 1 << 20, null).encode(channel.alloc());
+        channel.writeInbound(reply);
+        client.execRemotingLogic0("test:event", 5, new Object[]{1});
+        request = channel.readOutbound();
+        try {
+            request.readInt();
+            assertFalse(RpcInvokeHandler.isLegacy(request));
+        } finally {
+            request.release();
+        }
+        channel.finishAndReleaseAll();
+    }
+}
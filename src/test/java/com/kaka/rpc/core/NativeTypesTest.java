@@ -0,0 +1,117 @@
+package com.kaka.rpc.core;
+
+import com.kaka.rpc.codec.JdkStreamSerializer;
+import com.kaka.rpc.codec.NativeTypeRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NativeTypesTest {
+
+    enum Color {RED, GREEN}
+
+    record Point(int x, int y) {
+    }
+
+    enum Unregistered {ONE}
+
+    record Unlisted(String name, int size) implements Serializable {
+    }
+
+    record Shape(Color color, List<Point> points) {
+    }
+
+    interface ShapeService {
+        Optional<Shape> find(Map<String, Color> filter);
+    }
+
+    private static Object roundTrip(Object value) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            Utils.writeValue(buf, value, null, true, true);
+            return Utils.readValue(buf, null, true);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void jdkInternalCollectionsDecodeAsMutableCounterparts() {
+        Map<Object, Class<?>> cases = new LinkedHashMap<>();
+        cases.put(List.of(1, 2, 3), ArrayList.class);
+        cases.put(Collections.unmodifiableList(new LinkedList<>(List.of(1, 2))), ArrayList.class);
+        cases.put(Collections.synchronizedList(new ArrayList<>(List.of("a"))), ArrayList.class);
+        cases.put(Arrays.asList("a", "b"), ArrayList.class);
+        cases.put(Collections.emptyList(), ArrayList.class);
+        cases.put(Set.of("a"), LinkedHashSet.class);
+        cases.put(Collections.unmodifiableSet(new HashSet<>(Set.of(1, 2))), LinkedHashSet.class);
+        cases.put(Collections.unmodifiableSortedSet(new TreeSet<>(Set.of(3, 1, 2))), TreeSet.class);
+        cases.put(Map.of("k", 1), LinkedHashMap.class);
+        cases.put(Collections.synchronizedMap(new HashMap<>(Map.of("k", 1))), LinkedHashMap.class);
+        cases.put(Collections.unmodifiableSortedMap(new TreeMap<>(Map.of("b", 2, "a", 1))), TreeMap.class);
+        cases.put(new HashMap<>(Map.of("k", 1)).keySet(), LinkedHashSet.class);
+        for (Map.Entry<Object, Class<?>> e : cases.entrySet()) {
+            Object decoded = roundTrip(e.getKey());
+            assertSame(e.getValue(), decoded.getClass(), e.getKey().getClass().getName());
+            assertEquals(e.getKey(), decoded, e.getKey().getClass().getName());
+        }
+        //解码后为可修改的集合
+        List<Object> list = (List<Object>) roundTrip(List.of(1));
+        list.add(2);
+        assertEquals(List.of(1, 2), list);
+    }
+
+    @Test
+    void sortedCollectionWithComparatorIsNotNative() {
+        SortedSet<String> reversed = Collections.unmodifiableSortedSet(new TreeSet<>(Comparator.<String>reverseOrder()));
+        assertEquals(0, NativeTypes.tagOf(reversed));
+    }
+
+    @Test
+    void interfaceTypesAreRegisteredRecursively() {
+        NativeTypeRegistry.registerInterface(ShapeService.class);
+        Shape shape = new Shape(Color.GREEN, List.of(new Point(1, 2)));
+        assertEquals(shape, roundTrip(shape));
+        assertSame(Color.GREEN, roundTrip(Color.GREEN));
+    }
+
+    @Test
+    void unregisteredClassesFallBackToSerializer() {
+        Unlisted value = new Unlisted("kaka", 3);
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            Utils.writeValue(buf, value, new JdkStreamSerializer(), true, true);
+            assertEquals(100, buf.getByte(buf.readerIndex()));
+            assertEquals(value, Utils.readValue(buf, new JdkStreamSerializer(), true));
+        } finally {
+            buf.release();
+        }
+        assertEquals(0, NativeTypes.tagOf(Unregistered.ONE));
+    }
+
+    @Test
+    void unregisteredClassNamesAreRejected() {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            //模拟对端以原生编码写入本端未注册的类
+            NativeTypes.write(buf, Unregistered.ONE, NativeTypes.enum_ordinal, null, true);
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> Utils.readValue(buf, null, true));
+            assertTrue(ex.getMessage().contains(Unregistered.class.getName()));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void registerRejectsOtherClasses() {
+        assertThrows(IllegalArgumentException.class, () -> NativeTypeRegistry.register(String.class));
+        NativeTypeRegistry.register(Point.class);
+        assertSame(Point.class, NativeTypeRegistry.get(Point.class.getName()));
+    }
+}
@@ -0,0 +1,128 @@
+package com.kaka.rpc.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 客户端请求编码测试
+ *
+ * @author zkpursuit
+ */
+class NettyClientTest {
+
+    private static ByteBuf request(boolean compact, long deadlineMillis, Object... params) {
+        TestClient client = new TestClient();
+        client.setCompact(compact);
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        Handshake.apply(channel, Handshake.local(false, 2048, 1 << 20, null));
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        client.remotingRequest(ctx, 1, new RpcMethod("a.Service", "call", 1L, 2L), params, deadlineMillis);
+        return channel.readOutbound();
+    }
+
+    /**
+     * 预估的缓冲区大小包含截止时间与参数数量，写入时无需扩容
+     */
+    @Test
+    void estimateCoversDeadlineTrailer() {
+        ByteBuf buf = request(false, 1000);
+        try {
+            int flags = buf.getByte(4);
+            assertNotEquals(0, flags & RpcInvokeHandler.flag_deadline);
+            assertEquals(26 + 2 + 4, buf.readableBytes());
+            assertEquals(buf.readableBytes(), buf.capacity());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void compactEstimateIsUpperBound() {
+        ByteBuf buf = request(true, 1000, 7, "x");
+        try {
+            assertTrue(buf.capacity() >= buf.readableBytes());
+            assertTrue(buf.capacity() < 64);
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 结果解码失败时调用以异常完成，不会永久等待
+     */
+    @Test
+    void malformedResultCompletesExceptionally() {
+        TestClient client = new TestClient();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        client.cacheRpcInvoke(7, new NettyClient.RpcInvoke(future, null));
+        ByteBuf msg = Unpooled.buffer();
+        msg.writeByte(RpcInvokeHandler.flag_binary | RpcInvokeHandler.flag_command_index_ack).writeInt(7);
+        msg.writeByte(0).writeByte(100).writeInt(3).writeBytes(new byte[]{1, 2, 3}); //损坏的序列化数据
+        try {
+            client.processDataPacket(NettyClient.cmd_sc_sync_result, msg);
+        } finally {
+            msg.release();
+        }
+        ExecutionException ex = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(UncheckedIOException.class, ex.getCause());
+        assertNull(client.removeRpcInvoke(7));
+    }
+
+    /**
+     * 参数编码失败时释放请求缓冲区，并移除缓存的调用
+     */
+    @Test
+    void unencodableParamReleasesBufferAndFailsCall() throws Exception {
+        BufferLeakTest.TrackingAllocator alloc = new BufferLeakTest.TrackingAllocator();
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        channel.config().setAllocator(alloc);
+        Handshake.apply(channel, Handshake.local(false, 2048, 1 << 20, null));
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        TestClient client = new TestClient() {
+            @Override
+            public ChannelHandlerContext getChannelHandlerContext() {
+                return ctx;
+            }
+        };
+        CompletableFuture<Object> future = client.execRemotingMethod0(new RpcMethod("a.Service", "call", 1L, 2L), 5, new Object[]{new Object()});
+        ExecutionException ex = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(UncheckedIOException.class, ex.getCause());
+        assertNull(channel.readOutbound());
+        assertEquals(0, alloc.unreleased());
+        assertNull(client.removeRpcInvoke(1));
+    }
+
+    @Test
+    void unwritableChannelRejectsUnlessQueuingEnabled() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        Handshake.apply(channel, Handshake.local(false, 2048, 1 << 20, null));
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        ChannelHandlerContext ctx = channel.pipeline().firstContext();
+        TestClient client = new TestClient() {
+            @Override
+            public ChannelHandlerContext getChannelHandlerContext() {
+                return ctx;
+            }
+        };
+        RpcMethod method = new RpcMethod("a.Service", "call", 1L, 2L);
+        ExecutionException ex = assertThrows(ExecutionException.class, client.execRemotingMethod0(method, 5, new Object[0])::get);
+        assertEquals(RpcException.code_overloaded, assertInstanceOf(RpcException.class, ex.getCause()).getCode());
+        assertNull(channel.readOutbound());
+        client.setFailFastWhenUnwritable(false);
+        client.execRemotingMethod0(method, 5, new Object[0]);
+        ByteBuf request = channel.readOutbound();
+        assertNotNull(request);
+        request.release();
+        channel.finishAndReleaseAll();
+    }
+}
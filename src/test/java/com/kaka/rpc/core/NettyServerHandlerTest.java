@@ -0,0 +1,50 @@
+package com.kaka.rpc.core;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 服务端通信处理器测试
+ *
+ * @author zkpursuit
+ */
+class NettyServerHandlerTest {
+
+    private static EmbeddedChannel channel(boolean pauseReadWhenUnwritable) {
+        NettyServerHandler handler = new NettyServerHandler(1, Handshake.local(false, 2048, 1 << 20, null),
+                null, null, null, null, null, pauseReadWhenUnwritable);
+        return new EmbeddedChannel(handler) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("127.0.0.1", 9999);
+            }
+        };
+    }
+
+    @Test
+    void autoReadUntouchedWhenPauseDisabled() {
+        EmbeddedChannel channel = channel(false);
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        channel.runPendingTasks();
+        assertFalse(channel.isWritable());
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void readPausedWhileUnwritable() {
+        EmbeddedChannel channel = channel(true);
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        channel.runPendingTasks();
+        assertFalse(channel.config().isAutoRead());
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        channel.runPendingTasks();
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,90 @@
+package com.kaka.rpc.core;
+
+import com.kaka.notice.FacadeFactory;
+import com.kaka.notice.Proxy;
+import com.kaka.rpc.RemotingPriority;
+import com.kaka.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按优先级分发测试
+ *
+ * @author zkpursuit
+ */
+class PriorityRouterTest {
+
+    public interface HealthService {
+        @RemotingPriority(NettyServer.Priority.INLINE)
+        String ping();
+
+        String work();
+    }
+
+    public static class HealthServiceImpl extends Proxy implements HealthService {
+        @Override
+        public String ping() {
+            return "pong";
+        }
+
+        @Override
+        public String work() {
+            return "done";
+        }
+    }
+
+    /**
+     * 接口尚未登记至方法表时，首次调用即按方法上标注的优先级分发
+     */
+    @Test
+    void annotatedPriorityAppliesToFirstCall() throws Exception {
+        long interfaceId = StringUtils.toNumber(HealthService.class.getName());
+        FacadeFactory.getFacade().registerProxy(HealthServiceImpl.class, HealthService.class.getName(), String.valueOf(interfaceId));
+        PriorityRouter router = new PriorityRouter(Map.of(), Map.of(), 1, 1);
+        assertEquals(NettyServer.Priority.INLINE, priorityOf(router, interfaceId, HealthService.class.getMethod("ping")));
+        assertEquals(NettyServer.Priority.NORMAL, priorityOf(router, interfaceId, HealthService.class.getMethod("work")));
+    }
+
+    /**
+     * 线程池在首次使用时创建，停止后不再接受任务
+     */
+    @Test
+    void executorsCreatedOnDemandAndShutDown() {
+        PriorityRouter router = new PriorityRouter(Map.of(), Map.of(), 1, 1);
+        ExecutorService high = (ExecutorService) router.executor(NettyServer.Priority.HIGH);
+        assertSame(high, router.executor(NettyServer.Priority.HIGH));
+        assertFalse(high.isShutdown());
+        router.shutdown();
+        assertTrue(high.isShutdown());
+        assertTrue(((ExecutorService) router.executor(NettyServer.Priority.LOW)).isShutdown());
+    }
+
+    private static NettyServer.Priority priorityOf(PriorityRouter router, long interfaceId, Method method) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            buf.writeByte(RpcInvokeHandler.flag_binary);
+            buf.writeInt(1);
+            buf.writeByte(RpcInvokeHandler.call_method_id);
+            buf.writeLong(interfaceId);
+            buf.writeLong(methodId(method));
+            buf.writeShort(0);
+            return router.of(null, RpcInvokeHandler.opcode, buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static long methodId(Method method) {
+        for (Map.Entry<Long, Method> e : Utils.getAllMethods(HealthService.class).entrySet()) {
+            if (e.getValue().equals(method)) return e.getKey();
+        }
+        throw new AssertionError("method not found: " + method);
+    }
+}
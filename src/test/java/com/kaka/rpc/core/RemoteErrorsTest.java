@@ -0,0 +1,62 @@
+package com.kaka.rpc.core;
+
+import com.kaka.rpc.RemotingStackTrace;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemoteErrorsTest {
+
+    interface TracedMethod {
+        @RemotingStackTrace
+        void traced();
+
+        void plain();
+    }
+
+    @RemotingStackTrace
+    interface TracedType {
+        void any();
+    }
+
+    static class Impl implements TracedMethod {
+        @Override
+        public void traced() {
+        }
+
+        @Override
+        public void plain() {
+        }
+    }
+
+    static class TypeImpl implements TracedType {
+        @Override
+        public void any() {
+        }
+    }
+
+    static class SubImpl extends TypeImpl {
+        @Override
+        public void any() {
+        }
+    }
+
+    @Test
+    void interfaceAnnotationAppliesToImplementationMethod() throws Exception {
+        assertTrue(RemoteErrors.isStackTraceEnabled(Impl.class.getMethod("traced")));
+        assertFalse(RemoteErrors.isStackTraceEnabled(Impl.class.getMethod("plain")));
+    }
+
+    @Test
+    void annotatedInterfaceAppliesToInheritedImplementation() throws Exception {
+        assertTrue(RemoteErrors.isStackTraceEnabled(TracedType.class.getMethod("any")));
+        assertTrue(RemoteErrors.isStackTraceEnabled(TypeImpl.class.getMethod("any")));
+        assertTrue(RemoteErrors.isStackTraceEnabled(SubImpl.class.getMethod("any")));
+    }
+
+    @Test
+    void nullMethodHasNoStackTrace() {
+        assertFalse(RemoteErrors.isStackTraceEnabled(null));
+    }
+}
@@ -0,0 +1,66 @@
+package com.kaka.rpc.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 服务端RPC方法表测试
+ *
+ * @author zkpursuit
+ */
+class RemotingMethodTableTest {
+
+    interface Named {
+        String name();
+    }
+
+    interface CatService extends Named {
+        void meow();
+    }
+
+    interface DogService extends Named {
+        void bark();
+    }
+
+    /**
+     * 两个接口继承同一父接口时，继承方法的方法ID相同，须按接口ID区分各自的接口方法及实现类
+     */
+    @Test
+    void inheritedMethodsAreKeyedByInterface() throws Exception {
+        long catId = 1_000_001L, dogId = 1_000_002L;
+        RemotingMethodTable.register(CatService.class, catId);
+        RemotingMethodTable.register(DogService.class, dogId);
+
+        Method name = Named.class.getMethod("name");
+        long nameId = methodId(CatService.class, name);
+        assertEquals(nameId, methodId(DogService.class, name));
+
+        RemotingMethodTable.Entry cat = RemotingMethodTable.get(catId, nameId);
+        RemotingMethodTable.Entry dog = RemotingMethodTable.get(dogId, nameId);
+        assertNotNull(cat);
+        assertNotNull(dog);
+        assertSame(CatService.class, cat.interfaceClass);
+        assertSame(DogService.class, dog.interfaceClass);
+        assertEquals(String.valueOf(catId), cat.proxyName);
+        assertEquals(String.valueOf(dogId), dog.proxyName);
+    }
+
+    @Test
+    void unknownInterfaceIdIsNotResolved() throws Exception {
+        RemotingMethodTable.register(CatService.class, 1_000_001L);
+        long meowId = methodId(CatService.class, CatService.class.getMethod("meow"));
+        assertNotNull(RemotingMethodTable.get(1_000_001L, meowId));
+        assertNull(RemotingMethodTable.get(1_000_003L, meowId));
+    }
+
+    private static long methodId(Class<?> interfaceClass, Method method) {
+        for (Map.Entry<Long, Method> e : Utils.getAllMethods(interfaceClass).entrySet()) {
+            if (e.getValue().equals(method)) return e.getKey();
+        }
+        throw new AssertionError("method not found: " + method);
+    }
+}
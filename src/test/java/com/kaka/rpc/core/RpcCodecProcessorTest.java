@@ -0,0 +1,252 @@
+package com.kaka.rpc.core;
+
+import com.kaka.rpc.RpcCodec;
+import com.kaka.rpc.codec.RpcCodecProcessor;
+import com.kaka.rpc.codec.TypeCodec;
+import com.kaka.rpc.codec.TypeCodecs;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RpcCodecProcessor} 测试：以注解处理器编译示例源码，加载生成的编解码器后经原生编码往返读写 <br>
+ * 本项目自身编译时不执行注解处理，由测试在运行时调用编译器
+ *
+ * @author zkpursuit
+ */
+class RpcCodecProcessorTest {
+
+    /**
+     * 编译结果
+     *
+     * @param success     是否编译成功
+     * @param diagnostics 编译诊断信息
+     * @param loader      加载编译输出的类加载器
+     */
+    private record Compiled(boolean success, String diagnostics, URLClassLoader loader) {
+    }
+
+    private static Compiled compile(Path dir, Map<String, String> sources) throws IOException, URISyntaxException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler, "须在JDK中运行");
+        Path src = Files.createDirectories(dir.resolve("src"));
+        Path out = Files.createDirectories(dir.resolve("out"));
+        List<File> files = new ArrayList<>();
+        for (Map.Entry<String, String> e : sources.entrySet()) {
+            Path file = src.resolve(e.getKey().replace('.', '/') + ".java");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, e.getValue(), StandardCharsets.UTF_8);
+            files.add(file.toFile());
+        }
+        StringJoiner classpath = new StringJoiner(File.pathSeparator);
+        for (Class<?> cls : new Class<?>[]{RpcCodec.class, ByteBuf.class, ReferenceCounted.class}) {
+            classpath.add(Path.of(cls.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    List.of("-classpath", classpath.toString(), "-d", out.toString(), "-encoding", "UTF-8"),
+                    null, fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(List.of(new RpcCodecProcessor()));
+            boolean success = task.call();
+            StringBuilder sb = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                sb.append(d.getKind()).append(": ").append(d.getMessage(Locale.ROOT)).append('\n');
+            }
+            URLClassLoader loader = new URLClassLoader(new URL[]{out.toUri().toURL()}, RpcCodecProcessorTest.class.getClassLoader());
+            return new Compiled(success, sb.toString(), loader);
+        }
+    }
+
+    /**
+     * 经生成的服务声明加载编解码器并注册
+     */
+    private static List<TypeCodec<?>> registerGenerated(ClassLoader loader) {
+        List<TypeCodec<?>> codecs = new ArrayList<>();
+        for (TypeCodec<?> codec : ServiceLoader.load(TypeCodec.class, loader)) {
+            if (codec.getClass().getClassLoader() != loader) continue;
+            codecs.add(codec);
+        }
+        codecs.forEach(TypeCodecs::register);
+        return codecs;
+    }
+
+    private static Object roundTrip(Object value) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            Utils.writeValue(buf, value, null, true, true);
+            assertEquals(NativeTypes.type_codec, buf.getUnsignedByte(buf.readerIndex()));
+            Object decoded = Utils.readValue(buf, null, true);
+            assertFalse(buf.isReadable());
+            return decoded;
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void generatedCodecsRoundTrip(@TempDir Path dir) throws Exception {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("sample.Base", """
+                package sample;
+
+                public class Base {
+                    long id;
+                }
+                """);
+        sources.put("sample.Item", """
+                package sample;
+
+                import com.kaka.rpc.RpcCodec;
+                import java.util.Objects;
+
+                @RpcCodec
+                public class Item extends Base {
+                    public static int instances;
+                    public String name;
+                    private int count;
+                    private boolean active;
+                    public transient String cache;
+
+                    public int getCount() {
+                        return count;
+                    }
+
+                    public void setCount(int count) {
+                        this.count = count;
+                    }
+
+                    public boolean isActive() {
+                        return active;
+                    }
+
+                    public void setActive(boolean active) {
+                        this.active = active;
+                    }
+
+                    public static Item of(long id, String name, int count, boolean active) {
+                        Item item = new Item();
+                        item.id = id;
+                        item.name = name;
+                        item.count = count;
+                        item.active = active;
+                        item.cache = "cached";
+                        return item;
+                    }
+
+                    @Override
+                    public boolean equals(Object o) {
+                        return o instanceof Item i && id == i.id && Objects.equals(name, i.name) && count == i.count && active == i.active;
+                    }
+
+                    @Override
+                    public int hashCode() {
+                        return Objects.hash(id, name, count, active);
+                    }
+                }
+                """);
+        sources.put("sample.Order", """
+                package sample;
+
+                import com.kaka.rpc.RpcCodec;
+                import java.util.List;
+
+                @RpcCodec
+                public record Order(String no, Item item, List<Order.Line> lines, short flags, char grade, double total) {
+
+                    @RpcCodec
+                    public record Line(int sku, long quantity, Item item) {
+                    }
+
+                    public static Order sample() {
+                        Item item = Item.of(1L, "book", 3, true);
+                        return new Order("A-1", item, List.of(new Line(7, 2L, item), new Line(-1, Long.MAX_VALUE, null)), (short) -2, 'B', 9.5);
+                    }
+                }
+                """);
+        Compiled compiled = compile(dir, sources);
+        assertTrue(compiled.success(), compiled.diagnostics());
+        try (URLClassLoader loader = compiled.loader()) {
+            Set<String> names = new TreeSet<>();
+            for (TypeCodec<?> codec : registerGenerated(loader)) {
+                names.add(codec.getClass().getName());
+            }
+            assertEquals(Set.of("sample.Item_RpcCodec", "sample.Order_RpcCodec", "sample.Order_Line_RpcCodec"), names);
+
+            Object item = loader.loadClass("sample.Item").getMethod("of", long.class, String.class, int.class, boolean.class)
+                    .invoke(null, 42L, "pen", 5, true);
+            Object decodedItem = roundTrip(item);
+            assertEquals(item, decodedItem);
+            Field cache = decodedItem.getClass().getField("cache");
+            assertNull(cache.get(decodedItem)); //跳过transient字段
+
+            Object order = loader.loadClass("sample.Order").getMethod("sample").invoke(null);
+            assertEquals(order, roundTrip(order));
+        }
+    }
+
+    @Test
+    void privateFieldWithoutAccessorsFailsCompilation(@TempDir Path dir) throws Exception {
+        Compiled compiled = compile(dir, Map.of("broken.Hidden", """
+                package broken;
+
+                @com.kaka.rpc.RpcCodec
+                public class Hidden {
+                    private int value;
+
+                    public int getValue() {
+                        return value;
+                    }
+                }
+                """));
+        compiled.loader().close();
+        assertFalse(compiled.success());
+        assertTrue(compiled.diagnostics().contains("Hidden.value"), compiled.diagnostics());
+    }
+
+    @Test
+    void duplicateTypeIdIsRejectedOnRegistration(@TempDir Path dir) throws Exception {
+        Compiled compiled = compile(dir, Map.of(
+                "clash.First", """
+                        package clash;
+
+                        @com.kaka.rpc.RpcCodec(id = 0x7ff00013)
+                        public record First(int value) {
+                        }
+                        """,
+                "clash.Second", """
+                        package clash;
+
+                        @com.kaka.rpc.RpcCodec(id = 0x7ff00013)
+                        public record Second(String value) {
+                        }
+                        """));
+        assertTrue(compiled.success(), compiled.diagnostics());
+        try (URLClassLoader loader = compiled.loader()) {
+            TypeCodec<?> first = (TypeCodec<?>) loader.loadClass("clash.First_RpcCodec").getDeclaredConstructor().newInstance();
+            TypeCodec<?> second = (TypeCodec<?>) loader.loadClass("clash.Second_RpcCodec").getDeclaredConstructor().newInstance();
+            assertEquals(0x7ff00013, first.id());
+            TypeCodecs.register(first);
+            TypeCodecs.register(first); //同一类型重复注册无冲突
+            IllegalStateException ex = assertThrows(IllegalStateException.class, () -> TypeCodecs.register(second));
+            assertTrue(ex.getMessage().contains("clash.Second"), ex.getMessage());
+            assertSame(first, TypeCodecs.get(0x7ff00013));
+        }
+    }
+}
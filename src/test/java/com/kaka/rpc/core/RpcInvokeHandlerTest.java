@@ -0,0 +1,121 @@
+package com.kaka.rpc.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * rpc调用处理测试
+ *
+ * @author zkpursuit
+ */
+class RpcInvokeHandlerTest {
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    private final ChannelHandlerContext ctx = channel.pipeline().firstContext();
+
+    @AfterEach
+    void tearDown() {
+        NettyServer.protocolPreHandler = null;
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * 请求被协议前置处理器拒绝时仍须响应，否则调用方的调用一直滞留
+     */
+    @Test
+    void rejectedByPreHandlerStillResponds() {
+        NettyServer.protocolPreHandler = (opcode, param, c) -> false;
+        execute(request(11, 0));
+        RpcException ex = readError(11);
+        assertEquals(RpcException.code_rejected, ex.getCode());
+    }
+
+    /**
+     * 收到时已超过截止时间的请求不执行，以 {@link RpcException#code_deadline_exceeded} 响应
+     */
+    @Test
+    void expiredRequestIsAnsweredWithDeadlineExceeded() {
+        RpcMessage message = new RpcMessage(RpcInvokeHandler.opcode, request(12, 10), ctx);
+        message.receivedNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+        new RpcInvokeHandler().execute(message);
+        RpcException ex = readError(12);
+        assertEquals(RpcException.code_deadline_exceeded, ex.getCode());
+        assertNull(channel.readOutbound(), "只响应一次");
+    }
+
+    /**
+     * 未握手的旧版本客户端以旧版本结构调用，按旧版本结构返回并原样回传调用ID与事件名
+     */
+    @Test
+    void baselineRequestIsAnsweredInBaselineLayout() {
+        ByteBuf request = Unpooled.buffer();
+        Utils.writeShortString(request, "V1StGXR8_Z5jdHi6B-myT");
+        Utils.writeShortString(request, "rpc:a.Missing:call");
+        request.writeShort(0);
+        execute(request);
+        ByteBuf response = channel.readOutbound();
+        assertNotNull(response);
+        try {
+            assertEquals(NettyClient.cmd_sc_sync_result, response.readInt());
+            assertEquals("V1StGXR8_Z5jdHi6B-myT", Utils.readShortString(response));
+            assertEquals("rpc:a.Missing:call", Utils.readShortString(response));
+            assertEquals(-1, response.readByte()); //旧版本结构的异常文本
+            assertTrue(response.isReadable());
+        } finally {
+            response.release();
+        }
+    }
+
+    /**
+     * 以事件名调用领域事件，无参数
+     *
+     * @param id             调用ID
+     * @param deadlineMillis 大于0时携带截止时间
+     */
+    static ByteBuf request(int id, int deadlineMillis) {
+        ByteBuf buf = Unpooled.buffer();
+        int flags = RpcInvokeHandler.flag_binary | RpcInvokeHandler.flag_structured_error;
+        if (deadlineMillis > 0) flags |= RpcInvokeHandler.flag_deadline;
+        buf.writeByte(flags);
+        buf.writeInt(id);
+        buf.writeByte(RpcInvokeHandler.call_event);
+        Utils.writeShortString(buf, "test:event");
+        buf.writeShort(0);
+        if (deadlineMillis > 0) buf.writeInt(deadlineMillis);
+        return buf;
+    }
+
+    RpcMessage execute(ByteBuf request) {
+        RpcMessage message = new RpcMessage(RpcInvokeHandler.opcode, request, ctx);
+        message.receivedNanos = System.nanoTime();
+        new RpcInvokeHandler().execute(message);
+        return message;
+    }
+
+    RpcException readError(int id) {
+        ByteBuf response = channel.readOutbound();
+        assertNotNull(response, "no response written");
+        try {
+            assertEquals(NettyClient.cmd_sc_sync_result, response.readInt());
+            byte flags = response.readByte();
+            assertEquals(id, response.readInt());
+            if ((flags & RpcInvokeHandler.flag_command_index_ack) == 0) {
+                response.skipBytes(response.readShort());
+            }
+            assertEquals(-2, response.readByte());
+            Throwable ex = RemoteErrors.read(response);
+            return assertInstanceOf(RpcException.class, ex);
+        } finally {
+            response.release();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.kaka.rpc.core;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 不连接服务端的客户端，测试中以内嵌连接直接调用请求编码方法
+ *
+ * @author zkpursuit
+ */
+class TestClient extends NettyClient {
+
+    TestClient() {
+        super(new InetSocketAddress("127.0.0.1", 0), 1, 1, 1, 1);
+    }
+
+    @Override
+    protected void ping() {
+    }
+
+    @Override
+    protected void afterConnected() {
+    }
+
+    @Override
+    protected void afterDisconnect() {
+    }
+
+    @Override
+    protected void onErrorCodeListener(int triggerErrorOpcode, int errLevel, int errCode, String errInfo) {
+    }
+}